@@ -0,0 +1,361 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import java.util.Objects;
+
+/**
+ * Scanner finding IP version 4 and 6 literals in free text.
+ *
+ * The text is scanned from left to right by a hand-written state machine, no regular expressions
+ * are involved. Every literal found is reported to a {@link Listener} together with its offsets and
+ * its parsed address bytes, without creating any object.
+ *
+ * <p>To avoid false positives a literal has to stand on its own: it must neither be preceded nor
+ * followed by a letter, digit or underscore. Therefore neither version numbers like {@code
+ * 1.2.3.4.5} or {@code v1.2.3.4} nor timestamps like {@code 12:30:45} or MAC addresses are
+ * reported. Compressed IP version 6 literals with less than three groups additionally need to
+ * contain a decimal digit, so that identifiers like {@code dead::beef} or {@code Cafe::} found in
+ * source code and stack traces are not taken for addresses. IP version 6 literals may be enclosed
+ * in brackets, contain an embedded IP version 4 address such as {@code ::ffff:192.0.2.1} and be
+ * followed by a zone ID such as {@code %eth0}. The zone ID is not part of the reported
+ * literal.</p>
+ *
+ * <p>An instance is not thread-safe, since it reuses its internal buffers.</p>
+ */
+public class AddressScanner {
+
+  private static final int NO_MATCH = -1;
+  private static final int IPV6_GROUP_COUNT = 8;
+  private static final int IPV6_SHORT_GROUP_COUNT = 3;
+
+  private final byte[] address = new byte[AddressUtil.IPV6_BYTE_COUNT];
+  private final int[] groups = new int[IPV6_GROUP_COUNT];
+  private final ByteSequence byteSequence = new ByteSequence();
+
+  /**
+   * Receiver of IP literals found by an AddressScanner.
+   */
+  public interface Listener {
+
+    /**
+     * Called for every IP literal found, in the order of appearance.
+     *
+     * The address array is reused by the scanner and only valid during this call. It may be
+     * modified, e.g. masked in place.
+     *
+     * @param start Index of the first character of the literal
+     * @param end Index after the last character of the literal
+     * @param address Parsed address in network byte order, starting at index 0
+     * @param length Length of the address, 4 for IP version 4 and 16 for IP version 6 literals
+     */
+    void onAddress(int start, int end, byte[] address, int length);
+  }
+
+  /**
+   * Scan a text for IP literals.
+   *
+   * @param text Text to scan
+   * @param listener Listener receiving all IP literals found
+   * @return Amount of IP literals found
+   */
+  public int scan(final CharSequence text, final Listener listener) {
+    Objects.requireNonNull(text);
+    Objects.requireNonNull(listener);
+
+    return scan(text, 0, text.length(), listener);
+  }
+
+  /**
+   * Scan a text encoded in an ASCII compatible charset like UTF-8 or ISO-8859-1 for IP literals.
+   *
+   * The offsets reported to the {@code listener} are indices into {@code text}.
+   *
+   * @param text Array holding the text to scan
+   * @param offset Index of the first byte to scan
+   * @param length Amount of bytes to scan
+   * @param listener Listener receiving all IP literals found
+   * @return Amount of IP literals found
+   */
+  public int scan(final byte[] text, int offset, int length, final Listener listener) {
+    Objects.requireNonNull(text);
+    Objects.requireNonNull(listener);
+
+    if (offset < 0 || length < 0 || offset + length > text.length) {
+      throw new IllegalArgumentException("Invalid text offset or length.");
+    }
+
+    byteSequence.bytes = text;
+    try {
+      return scan(byteSequence, offset, offset + length, listener);
+    } finally {
+      byteSequence.bytes = null;
+    }
+  }
+
+  /*
+   * Candidates are only tried at positions which are not preceded by an alphanumeric character,
+   * and each attempt reads at most a bounded amount of characters. Thus the scan stays linear.
+   */
+  private int scan(final CharSequence text, int from, int to, final Listener listener) {
+    int count = 0;
+    int position = from;
+
+    while (position < to) {
+      char c = text.charAt(position);
+
+      if ((isHex(c) || c == ':') && position + 1 < to) {
+        char previous = position > from ? text.charAt(position - 1) : ' ';
+        int end = NO_MATCH;
+        int length = 0;
+
+        if (isDigit(c) && !isWordCharacter(previous) && previous != '.') {
+          end = matchIPv4(text, position, to, 0);
+          length = AddressUtil.IPV4_BYTE_COUNT;
+          if (end != NO_MATCH && !isIPv4End(text, end, to)) {
+            end = NO_MATCH;
+          }
+        }
+
+        if (end == NO_MATCH && !isWordCharacter(previous) && previous != '.'
+            && previous != ':') {
+          end = matchIPv6(text, position, to);
+          length = AddressUtil.IPV6_BYTE_COUNT;
+        }
+
+        if (end != NO_MATCH) {
+          listener.onAddress(position, end, address, length);
+          count++;
+          position = length == AddressUtil.IPV6_BYTE_COUNT ? skipZone(text, end, to) : end;
+          continue;
+        }
+      }
+
+      position++;
+    }
+
+    return count;
+  }
+
+  private int matchIPv4(final CharSequence text, int position, int to, int addressOffset) {
+    for (int octet = 0; octet < AddressUtil.IPV4_BYTE_COUNT; octet++) {
+      if (octet > 0) {
+        if (position >= to || text.charAt(position) != '.') {
+          return NO_MATCH;
+        }
+        position++;
+      }
+
+      int value = 0;
+      int digits = 0;
+      while (position < to && digits <= 3 && isDigit(text.charAt(position))) {
+        value = value * 10 + text.charAt(position) - '0';
+        digits++;
+        position++;
+      }
+
+      if (digits == 0 || digits > 3 || value > 255) {
+        return NO_MATCH;
+      }
+      address[addressOffset + octet] = (byte) value;
+    }
+
+    return position;
+  }
+
+  private int matchIPv6(final CharSequence text, int position, int to) {
+    int groupCount = 0;
+    int gap = NO_MATCH;
+    boolean hasEmbeddedIPv4 = false;
+    boolean hasDecimalDigit = false;
+
+    if (text.charAt(position) == ':') {
+      if (position + 2 >= to || text.charAt(position + 1) != ':'
+          || !isHex(text.charAt(position + 2))) {
+        return NO_MATCH;
+      }
+      gap = 0;
+      position += 2;
+    }
+
+    while (true) {
+      int groupStart = position;
+      int value = 0;
+      while (position < to && position - groupStart <= 4 && isHex(text.charAt(position))) {
+        value = (value << 4) | hexValue(text.charAt(position));
+        hasDecimalDigit |= isDigit(text.charAt(position));
+        position++;
+      }
+
+      if (position - groupStart > 4) {
+        return NO_MATCH;
+      }
+
+      // a dot not starting an embedded IP version 4 address may still end a sentence
+      if (position < to && text.charAt(position) == '.' && groupCount <= 6
+          && (gap != NO_MATCH || groupCount == 6)) {
+        int embeddedEnd = matchIPv4(text, groupStart, to, AddressUtil.IPV6_BYTE_COUNT
+            - AddressUtil.IPV4_BYTE_COUNT);
+        if (embeddedEnd != NO_MATCH) {
+          position = embeddedEnd;
+          hasEmbeddedIPv4 = true;
+          groupCount += 2;
+          break;
+        }
+      }
+
+      groups[groupCount++] = value;
+
+      if (groupCount == IPV6_GROUP_COUNT || position + 1 >= to
+          || text.charAt(position) != ':') {
+        break;
+      }
+
+      char next = text.charAt(position + 1);
+      if (next == ':') {
+        if (gap != NO_MATCH) {
+          return NO_MATCH;
+        }
+        gap = groupCount;
+        position += 2;
+        if (position >= to || !isHex(text.charAt(position))) {
+          break;
+        }
+      } else if (isHex(next)) {
+        position++;
+      } else {
+        break;
+      }
+    }
+
+    if ((gap == NO_MATCH && groupCount != IPV6_GROUP_COUNT)
+        || (gap != NO_MATCH && groupCount >= IPV6_GROUP_COUNT)
+        || !isIPv6End(text, position, to)) {
+      return NO_MATCH;
+    }
+
+    // a short compressed literal made of letters only is most likely an identifier
+    if (gap != NO_MATCH && !hasEmbeddedIPv4 && groupCount < IPV6_SHORT_GROUP_COUNT
+        && !hasDecimalDigit) {
+      return NO_MATCH;
+    }
+
+    fillIPv6Address(groupCount, gap, hasEmbeddedIPv4);
+
+    return position;
+  }
+
+  private void fillIPv6Address(int groupCount, int gap, boolean hasEmbeddedIPv4) {
+    int hexGroupCount = hasEmbeddedIPv4 ? groupCount - 2 : groupCount;
+    int trailingGroupCount = gap == NO_MATCH ? 0 : hexGroupCount - gap;
+    int leadingGroupCount = hexGroupCount - trailingGroupCount;
+    int trailingStart = (hasEmbeddedIPv4 ? 6 : IPV6_GROUP_COUNT) - trailingGroupCount;
+
+    for (int i = 0; i < (hasEmbeddedIPv4 ? 6 : IPV6_GROUP_COUNT); i++) {
+      int value;
+      if (i < leadingGroupCount) {
+        value = groups[i];
+      } else if (i >= trailingStart) {
+        value = groups[leadingGroupCount + i - trailingStart];
+      } else {
+        value = 0;
+      }
+      address[2 * i] = (byte) (value >>> 8);
+      address[2 * i + 1] = (byte) value;
+    }
+  }
+
+  private static boolean isIPv4End(final CharSequence text, int position, int to) {
+    if (position >= to) {
+      return true;
+    }
+
+    char c = text.charAt(position);
+    boolean isNextOctet = c == '.' && position + 1 < to && isDigit(text.charAt(position + 1));
+
+    return !isWordCharacter(c) && !isNextOctet;
+  }
+
+  private static boolean isIPv6End(final CharSequence text, int position, int to) {
+    if (position >= to) {
+      return true;
+    }
+
+    char c = text.charAt(position);
+    char next = position + 1 < to ? text.charAt(position + 1) : ' ';
+    boolean isNextOctet = c == '.' && isDigit(next);
+    boolean isNextGroup = c == ':' && (isHex(next) || next == ':');
+
+    return !isWordCharacter(c) && !isNextOctet && !isNextGroup;
+  }
+
+  private static int skipZone(final CharSequence text, int position, int to) {
+    if (position + 1 < to && text.charAt(position) == '%'
+        && isZoneCharacter(text.charAt(position + 1))) {
+      position++;
+      while (position < to && isZoneCharacter(text.charAt(position))) {
+        position++;
+      }
+    }
+
+    return position;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isHex(char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+
+  private static int hexValue(char c) {
+    if (c <= '9') {
+      return c - '0';
+    }
+    return (c | 0x20) - 'a' + 10;
+  }
+
+  private static boolean isWordCharacter(char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+  }
+
+  private static boolean isZoneCharacter(char c) {
+    return isWordCharacter(c) || c == '-' || c == '.';
+  }
+
+  /**
+   * Reusable view of a byte array as characters, mapping every byte to one character.
+   */
+  private static class ByteSequence implements CharSequence {
+
+    private byte[] bytes;
+
+    @Override
+    public int length() {
+      return bytes.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) (bytes[index] & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+      char[] chars = new char[bytes.length];
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = charAt(i);
+      }
+      return new String(chars);
+    }
+  }
+}
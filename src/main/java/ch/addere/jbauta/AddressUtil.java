@@ -13,8 +13,8 @@ import java.net.UnknownHostException;
  */
 public class AddressUtil {
 
-  private static final int IPV4_BYTE_COUNT = 4;
-  private static final int IPV6_BYTE_COUNT = 16;
+  static final int IPV4_BYTE_COUNT = 4;
+  static final int IPV6_BYTE_COUNT = 16;
   private static final int IP_CIDR_MINIMUM = 0;
   private static final int IPV4_CIDR_MAXIMUM = 32;
   private static final int IPV6_CIDR_MAXIMUM = 128;
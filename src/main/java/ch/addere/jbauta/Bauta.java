@@ -56,5 +56,38 @@ public class Bauta {
     return calc.maskPublicRoutableIPAddressOnly(mask);
   }
 
+  /**
+   * Masquerade an IP version 4 address given as integer in network byte order.
+   *
+   * This method behaves like {@link #maskAny(InetAddress)} but does not create any object and
+   * is therefore suited for processing large amounts of addresses.
+   *
+   * @param IPAddress IP version 4 address to mask, e.g. 0xCB00712A for 203.0.113.42
+   * @return A masqueraded IP version 4 address
+   */
+  public int maskAny(int IPAddress) {
+    return calc.maskIPv4Address(IPAddress);
+  }
+
+  /**
+   * Masquerade an IP version 4 or 6 address stored in a byte array in place.
+   *
+   * This method behaves like {@link #maskAny(InetAddress)} but does not create any object and
+   * is therefore suited for processing large amounts of addresses.
+   *
+   * @param IPAddress Array holding the IP address in network byte order
+   * @param offset Index of the first byte of the IP address
+   * @param length Length of the IP address, either 4 or 16
+   * @throws IllegalArgumentException If {@code length} is neither 4 nor 16
+   */
+  public void maskAnyInPlace(final byte[] IPAddress, int offset, int length) {
+    byte[] address = Objects.requireNonNull(IPAddress);
+
+    if (offset < 0 || offset + length > address.length) {
+      throw new IllegalArgumentException("Invalid address offset or length.");
+    }
+
+    calc.maskAddressInPlace(address, offset, length);
+  }
 
 }
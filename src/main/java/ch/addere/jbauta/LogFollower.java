@@ -0,0 +1,422 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follower of a growing log file, masking all IP literals of new lines as they are appended.
+ *
+ * Similar to {@code tail -F} the log file is polled for new bytes, which are read with positional
+ * reads, masked by a {@link TextMasker} and appended to an output file. Only complete lines are
+ * processed, lines longer than the read buffer in parts split between characters which cannot
+ * belong to an IP literal. Rotation is detected by a change of the file key, i.e. the inode on
+ * Unix systems, in which case the remainder of the rotated file is processed before switching to
+ * the new file. A log file shrinking in size is considered truncated and followed from its start
+ * again.
+ *
+ * <p>The progress is persisted in a checkpoint file holding the file key together with the input
+ * and output offsets. A new follower resumes exactly from its checkpoint: output written after the
+ * checkpoint is cut off and produced again, and if the log file has been rotated in the meantime,
+ * the rotated file is looked up in the same directory by its file key and finished first.</p>
+ *
+ * <p>File keys are required, therefore a follower cannot be used on file systems which do not
+ * provide them.</p>
+ *
+ * <p>An instance is not thread-safe.</p>
+ */
+public class LogFollower implements Closeable {
+
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  private static final String CHECKPOINT_FILE_KEY = "fileKey";
+  private static final String CHECKPOINT_INPUT_OFFSET = "inputOffset";
+  private static final String CHECKPOINT_OUTPUT_OFFSET = "outputOffset";
+
+  private final TextMasker masker;
+  private final Path input;
+  private final Path checkpoint;
+  private final FileChannel output;
+  private final ByteBuffer readBuffer;
+  private final ChunkBuffer writeBuffer;
+
+  private FileChannel inputChannel;
+  private String inputKey;
+  private long inputOffset;
+
+  /**
+   * Initialise a follower, resuming from {@code checkpoint} if it exists.
+   *
+   * @param bauta Bauta context used for masking
+   * @param input Log file to follow, which does not need to exist yet
+   * @param output File the masked lines are appended to
+   * @param checkpoint File holding the progress of this follower
+   * @throws IOException If {@code output} or {@code checkpoint} cannot be accessed
+   * @throws UnsupportedOperationException If the file system of {@code input} does not provide
+   *     file keys, which are required to detect rotation
+   */
+  public LogFollower(final Bauta bauta, final Path input, final Path output,
+      final Path checkpoint) throws IOException {
+    this(bauta, input, output, checkpoint, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Initialise a follower with a custom read buffer size, resuming from {@code checkpoint} if it
+   * exists.
+   *
+   * A line longer than the read buffer is processed in several parts, which are split after the
+   * last character that cannot belong to an IP literal. Only a run of more than {@code bufferSize}
+   * hex digits, colons and dots without any other character in between is split at an arbitrary
+   * position, so the buffer should not be chosen much smaller than the default of 64 KiB.
+   *
+   * @param bauta Bauta context used for masking
+   * @param input Log file to follow, which does not need to exist yet
+   * @param output File the masked lines are appended to
+   * @param checkpoint File holding the progress of this follower
+   * @param bufferSize Size of the read buffer in bytes
+   * @throws IOException If {@code output} or {@code checkpoint} cannot be accessed
+   * @throws UnsupportedOperationException If the file system of {@code input} does not provide
+   *     file keys, which are required to detect rotation
+   */
+  public LogFollower(final Bauta bauta, final Path input, final Path output,
+      final Path checkpoint, int bufferSize) throws IOException {
+    this.masker = new TextMasker(Objects.requireNonNull(bauta));
+    this.input = Objects.requireNonNull(input);
+    this.checkpoint = Objects.requireNonNull(checkpoint);
+
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Invalid buffer size. Has to be positive");
+    }
+    this.readBuffer = ByteBuffer.allocate(bufferSize);
+    this.writeBuffer = new ChunkBuffer(bufferSize);
+
+    // without file keys neither rotation nor the file of a checkpoint could be recognised
+    Path directory = input.toAbsolutePath().getParent();
+    if (directory != null) {
+      fileKey(directory);
+    }
+
+    this.output = FileChannel.open(Objects.requireNonNull(output), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE);
+    try {
+      resume();
+    } catch (IOException | RuntimeException e) {
+      this.output.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Process all complete lines appended since the last poll.
+   *
+   * @return Amount of bytes processed
+   * @throws IOException If reading the log file or writing the output fails
+   */
+  public long poll() throws IOException {
+    if (inputChannel == null && !openInput(null)) {
+      return 0;
+    }
+
+    long processed = drain();
+    String currentKey = fileKey(input);
+
+    if (currentKey != null && !currentKey.equals(inputKey)) {
+      // finish the rotated file, including lines appended meanwhile and an unterminated last line
+      processed += drain();
+      processed += drainPartialLine();
+      inputChannel.close();
+      inputChannel = null;
+      if (openInput(null)) {
+        processed += drain();
+      }
+    } else if (inputChannel.size() < inputOffset) {
+      inputOffset = 0;
+      processed += drain();
+    }
+
+    return processed;
+  }
+
+  /**
+   * Persist the current progress to the checkpoint file.
+   *
+   * The output is forced to the storage device first, so that a checkpoint never refers to
+   * output which might get lost. The checkpoint itself is forced to the storage device before it
+   * atomically replaces the previous one, so that a power loss cannot leave an empty checkpoint.
+   *
+   * @throws IOException If writing the checkpoint fails
+   */
+  public void checkpoint() throws IOException {
+    output.force(false);
+
+    Properties properties = new Properties();
+    properties.setProperty(CHECKPOINT_FILE_KEY, inputKey == null ? "" : inputKey);
+    properties.setProperty(CHECKPOINT_INPUT_OFFSET, Long.toString(inputOffset));
+    properties.setProperty(CHECKPOINT_OUTPUT_OFFSET, Long.toString(output.position()));
+
+    Path temporary = Paths.get(checkpoint + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      properties.store(Channels.newOutputStream(channel),
+          "JBauta log follower checkpoint for " + input);
+      channel.force(true);
+    }
+    Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Follow the log file until the current thread is interrupted.
+   *
+   * A checkpoint is written periodically and once more before returning.
+   *
+   * @param pollInterval Time to wait after a poll without new lines
+   * @param checkpointInterval Minimum time between two checkpoints
+   * @param unit Unit of {@code pollInterval} and {@code checkpointInterval}
+   * @throws IOException If reading the log file or writing the output fails
+   * @throws InterruptedException If the current thread has been interrupted
+   */
+  public void follow(long pollInterval, long checkpointInterval, final TimeUnit unit)
+      throws IOException, InterruptedException {
+    long checkpointNanos = unit.toNanos(checkpointInterval);
+    long lastCheckpoint = System.nanoTime();
+
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        if (poll() == 0) {
+          unit.sleep(pollInterval);
+        }
+        if (System.nanoTime() - lastCheckpoint >= checkpointNanos) {
+          checkpoint();
+          lastCheckpoint = System.nanoTime();
+        }
+      }
+      // clear the interrupt flag as any method throwing InterruptedException does
+      Thread.interrupted();
+      throw new InterruptedException();
+    } finally {
+      checkpoint();
+    }
+  }
+
+  /**
+   * Write a last checkpoint and close all files.
+   *
+   * @throws IOException If writing the checkpoint fails
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      checkpoint();
+    } finally {
+      try {
+        output.close();
+      } finally {
+        if (inputChannel != null) {
+          inputChannel.close();
+        }
+      }
+    }
+  }
+
+  private void resume() throws IOException {
+    if (!Files.exists(checkpoint)) {
+      output.position(output.size());
+      return;
+    }
+
+    Properties properties = new Properties();
+    try (InputStream stream = Files.newInputStream(checkpoint)) {
+      properties.load(stream);
+    }
+
+    String savedKey = properties.getProperty(CHECKPOINT_FILE_KEY, "");
+    long savedInputOffset = parseOffset(properties.getProperty(CHECKPOINT_INPUT_OFFSET));
+    long savedOutputOffset = parseOffset(properties.getProperty(CHECKPOINT_OUTPUT_OFFSET));
+
+    // output written after the checkpoint is produced again from the input
+    if (output.size() > savedOutputOffset) {
+      output.truncate(savedOutputOffset);
+    }
+    output.position(output.size());
+
+    // the log file did not exist yet when the checkpoint was written
+    if (savedKey.isEmpty()) {
+      return;
+    }
+
+    Path rotated = savedKey.equals(fileKey(input)) ? input : findByFileKey(savedKey);
+    if (rotated != null && openInput(rotated) && savedKey.equals(inputKey)
+        && inputChannel.size() >= savedInputOffset) {
+      inputOffset = savedInputOffset;
+    }
+  }
+
+  private boolean openInput(final Path path) throws IOException {
+    Path file = path == null ? input : path;
+
+    try {
+      inputChannel = FileChannel.open(file, StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+
+    inputKey = fileKey(file);
+    inputOffset = 0;
+    return true;
+  }
+
+  private Path findByFileKey(final String key) throws IOException {
+    Path directory = input.toAbsolutePath().getParent();
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        if (key.equals(fileKey(file))) {
+          return file;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /*
+   * Reads from the last processed offset on, so that a partial line is read again by the next
+   * poll instead of being buffered.
+   */
+  private long drain() throws IOException {
+    long processed = 0;
+
+    while (true) {
+      readBuffer.clear();
+      int read = inputChannel.read(readBuffer, inputOffset);
+      if (read <= 0) {
+        break;
+      }
+
+      int length = lastLineEnd(readBuffer.array(), read);
+      if (length == 0) {
+        if (read < readBuffer.capacity()) {
+          break;
+        }
+        length = lastLiteralBoundary(readBuffer.array(), read);
+      }
+
+      write(length, false);
+      processed += length;
+    }
+
+    return processed;
+  }
+
+  private long drainPartialLine() throws IOException {
+    readBuffer.clear();
+    int read = inputChannel.read(readBuffer, inputOffset);
+    if (read <= 0) {
+      return 0;
+    }
+
+    write(read, true);
+    return read;
+  }
+
+  private void write(int length, boolean isPartialLine) throws IOException {
+    writeBuffer.reset();
+    masker.mask(readBuffer.array(), 0, length, writeBuffer);
+    if (isPartialLine) {
+      writeBuffer.write('\n');
+    }
+
+    ByteBuffer chunk = writeBuffer.asByteBuffer();
+    while (chunk.hasRemaining()) {
+      output.write(chunk);
+    }
+    inputOffset += length;
+  }
+
+  private static int lastLineEnd(final byte[] bytes, int length) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (bytes[i] == '\n') {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  /*
+   * Splits an overlong line such that no IP literal crosses the split. The tail is read again
+   * by the next read.
+   */
+  private static int lastLiteralBoundary(final byte[] bytes, int length) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (!isLiteralCharacter(bytes[i])) {
+        return i + 1;
+      }
+    }
+    return length;
+  }
+
+  private static boolean isLiteralCharacter(byte b) {
+    return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F')
+        || b == ':' || b == '.' || b == '%' || b == '[' || b == ']';
+  }
+
+  private static String fileKey(final Path file) throws IOException {
+    Object key;
+    try {
+      key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+
+    if (key == null) {
+      throw new UnsupportedOperationException("File system does not provide file keys: " + file);
+    }
+    return key.toString();
+  }
+
+  private long parseOffset(final String offset) throws IOException {
+    try {
+      long value = Long.parseLong(Objects.requireNonNull(offset));
+      if (value < 0) {
+        throw new NumberFormatException();
+      }
+      return value;
+    } catch (NumberFormatException | NullPointerException e) {
+      throw new IOException("Corrupt checkpoint: " + checkpoint, e);
+    }
+  }
+
+  /**
+   * Reusable output buffer giving access to its content without copying it.
+   */
+  private static class ChunkBuffer extends ByteArrayOutputStream {
+
+    private ChunkBuffer(int size) {
+      super(size);
+    }
+
+    private ByteBuffer asByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
+}
@@ -15,6 +15,8 @@ public class Masquerade {
 
   private InetAddress v4Mask;
   private InetAddress v6Mask;
+  private int v4MaskBits;
+  private byte[] v6MaskBytes;
 
   /**
    * Initialise bitmask for masking addresses.
@@ -28,6 +30,8 @@ public class Masquerade {
   protected Masquerade(final InetAddress v4Mask, final InetAddress v6Mask) {
     this.v4Mask = v4Mask;
     this.v6Mask = v6Mask;
+    this.v4MaskBits = toInt(v4Mask.getAddress(), 0);
+    this.v6MaskBytes = v6Mask.getAddress();
   }
 
 
@@ -71,6 +75,49 @@ public class Masquerade {
     return isPrivateAddress ? addressToMask : v4v6Wrapper(addressToMask);
   }
 
+  /**
+   * Mask an IP version 4 address given as integer in network byte order.
+   *
+   * @param addressToMask IP version 4 address to mask
+   * @return Masked IP version 4 address
+   */
+  protected int maskIPv4Address(int addressToMask) {
+    return addressToMask & v4MaskBits;
+  }
+
+  /**
+   * Mask an IP version 4 or 6 address stored in a byte array, without creating new objects.
+   *
+   * <p>Precondition: address is not equals null and holds {@code length} bytes from {@code
+   * offset} on</p>
+   *
+   * @param address Array holding the IP address to mask
+   * @param offset Index of the first byte of the IP address
+   * @param length Length of the IP address, either 4 or 16
+   */
+  protected void maskAddressInPlace(final byte[] address, int offset, int length) {
+    if (length == AddressUtil.IPV4_BYTE_COUNT) {
+      int masked = maskIPv4Address(toInt(address, offset));
+      address[offset] = (byte) (masked >>> 24);
+      address[offset + 1] = (byte) (masked >>> 16);
+      address[offset + 2] = (byte) (masked >>> 8);
+      address[offset + 3] = (byte) masked;
+    } else if (length == AddressUtil.IPV6_BYTE_COUNT) {
+      for (int i = 0; i < length; i++) {
+        address[offset + i] &= v6MaskBytes[i];
+      }
+    } else {
+      throw new IllegalArgumentException("Invalid address length. Has to be 4 or 16");
+    }
+  }
+
+  private static int toInt(final byte[] address, int offset) {
+    return ((address[offset] & 0xFF) << 24)
+        | ((address[offset + 1] & 0xFF) << 16)
+        | ((address[offset + 2] & 0xFF) << 8)
+        | (address[offset + 3] & 0xFF);
+  }
+
   private InetAddress v4v6Wrapper(final InetAddress addressToMask) throws UnknownHostException {
     if (AddressUtil.isIPv4(addressToMask)) {
       return masqueradeIPAddress(addressToMask, v4Mask);
@@ -0,0 +1,541 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Offline lookup index mapping IP address ranges to labels, e.g. a country or city name.
+ *
+ * The index is meant to enrich masqueraded addresses inline: ranges are held in sorted primitive
+ * arrays and a lookup is a binary search which does not create any object. An index is either
+ * built from a CSV file with the columns {@code start,end,label} or loaded from its binary form
+ * written by {@link #writeBinary(Path)}, which is memory-mapped and copied in bulk.
+ *
+ * <p>Keep in mind that masking moves an address to the start of its masked network. Ranges which
+ * do not start on such a network boundary may therefore miss masked addresses.</p>
+ */
+public class NetworkRangeIndex {
+
+  private static final int BINARY_MAGIC = 0x4A425249;
+  private static final int BINARY_VERSION = 1;
+  private static final int BINARY_HEADER_SIZE = 24;
+  private static final int IPV4_SIGN_FLIP = 0x80000000;
+  private static final long IPV6_SIGN_FLIP = 0x8000000000000000L;
+  private static final long IPV4_MAPPED_PREFIX = 0xFFFF00000000L;
+  private static final long IPV4_MAPPED_MASK = 0xFFFFFFFF00000000L;
+  private static final int NOT_FOUND = -1;
+
+  /*
+   * Range boundaries are stored with a flipped sign bit, so that signed comparison of the stored
+   * values equals unsigned comparison of the addresses.
+   */
+  private final int[] v4Starts;
+  private final int[] v4Ends;
+  private final int[] v4Labels;
+  private final long[] v6StartsHigh;
+  private final long[] v6StartsLow;
+  private final long[] v6EndsHigh;
+  private final long[] v6EndsLow;
+  private final int[] v6Labels;
+  private final String[] labels;
+
+  private NetworkRangeIndex(int[] v4Starts, int[] v4Ends, int[] v4Labels, long[] v6StartsHigh,
+      long[] v6StartsLow, long[] v6EndsHigh, long[] v6EndsLow, int[] v6Labels, String[] labels) {
+    this.v4Starts = v4Starts;
+    this.v4Ends = v4Ends;
+    this.v4Labels = v4Labels;
+    this.v6StartsHigh = v6StartsHigh;
+    this.v6StartsLow = v6StartsLow;
+    this.v6EndsHigh = v6EndsHigh;
+    this.v6EndsLow = v6EndsLow;
+    this.v6Labels = v6Labels;
+    this.labels = labels;
+  }
+
+  /**
+   * Build an index from a CSV file.
+   *
+   * Every line consists of the first and last IP address of a range followed by its label, e.g.
+   * {@code 203.0.112.0,203.0.113.255,Zurich}. Empty lines and lines starting with {@code #} are
+   * ignored. Both ends of a range have to be of the same IP version and ranges must not overlap.
+   *
+   * @param csv Path to a CSV file encoded in UTF-8
+   * @return Index holding all ranges of {@code csv}
+   * @throws IOException If {@code csv} cannot be read
+   * @throws IllegalArgumentException If {@code csv} contains an invalid line
+   */
+  public static NetworkRangeIndex fromCsv(final Path csv) throws IOException {
+    Objects.requireNonNull(csv);
+
+    List<Range> v4Ranges = new ArrayList<>();
+    List<Range> v6Ranges = new ArrayList<>();
+    Map<String, Integer> labelIds = new HashMap<>();
+    List<String> labels = new ArrayList<>();
+
+    try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+          continue;
+        }
+
+        int firstComma = trimmed.indexOf(',');
+        int secondComma = firstComma < 0 ? -1 : trimmed.indexOf(',', firstComma + 1);
+        if (secondComma < 0) {
+          throw new IllegalArgumentException("Invalid range on line " + lineNumber);
+        }
+
+        byte[] start = parseAddress(trimmed.substring(0, firstComma).trim(), lineNumber);
+        byte[] end = parseAddress(trimmed.substring(firstComma + 1, secondComma).trim(),
+            lineNumber);
+        String label = trimmed.substring(secondComma + 1).trim();
+
+        if (start.length != end.length) {
+          throw new IllegalArgumentException("Mixed IP versions on line " + lineNumber);
+        }
+
+        Integer labelId = labelIds.get(label);
+        if (labelId == null) {
+          labelId = labels.size();
+          labelIds.put(label, labelId);
+          labels.add(label);
+        }
+
+        Range range = new Range(start, end, labelId);
+        if (range.compareStartTo(range.endHigh, range.endLow) > 0) {
+          throw new IllegalArgumentException("Range start after end on line " + lineNumber);
+        }
+        if (start.length == AddressUtil.IPV4_BYTE_COUNT) {
+          v4Ranges.add(range);
+        } else {
+          v6Ranges.add(range);
+        }
+      }
+    }
+
+    v4Ranges.sort(Range::compareTo);
+    v6Ranges.sort(Range::compareTo);
+    checkOverlapping(v4Ranges);
+    checkOverlapping(v6Ranges);
+
+    int[] v4Starts = new int[v4Ranges.size()];
+    int[] v4Ends = new int[v4Ranges.size()];
+    int[] v4Labels = new int[v4Ranges.size()];
+    for (int i = 0; i < v4Ranges.size(); i++) {
+      Range range = v4Ranges.get(i);
+      v4Starts[i] = (int) range.startLow ^ IPV4_SIGN_FLIP;
+      v4Ends[i] = (int) range.endLow ^ IPV4_SIGN_FLIP;
+      v4Labels[i] = range.label;
+    }
+
+    long[] v6StartsHigh = new long[v6Ranges.size()];
+    long[] v6StartsLow = new long[v6Ranges.size()];
+    long[] v6EndsHigh = new long[v6Ranges.size()];
+    long[] v6EndsLow = new long[v6Ranges.size()];
+    int[] v6Labels = new int[v6Ranges.size()];
+    for (int i = 0; i < v6Ranges.size(); i++) {
+      Range range = v6Ranges.get(i);
+      v6StartsHigh[i] = range.startHigh ^ IPV6_SIGN_FLIP;
+      v6StartsLow[i] = range.startLow ^ IPV6_SIGN_FLIP;
+      v6EndsHigh[i] = range.endHigh ^ IPV6_SIGN_FLIP;
+      v6EndsLow[i] = range.endLow ^ IPV6_SIGN_FLIP;
+      v6Labels[i] = range.label;
+    }
+
+    return new NetworkRangeIndex(v4Starts, v4Ends, v4Labels, v6StartsHigh, v6StartsLow,
+        v6EndsHigh, v6EndsLow, v6Labels, labels.toArray(new String[0]));
+  }
+
+  /**
+   * Load an index from its binary form written by {@link #writeBinary(Path)}.
+   *
+   * @param binary Path to a binary index file
+   * @return Index holding all ranges of {@code binary}
+   * @throws IOException If {@code binary} cannot be read or is not a valid binary index
+   */
+  public static NetworkRangeIndex fromBinary(final Path binary) throws IOException {
+    Objects.requireNonNull(binary);
+
+    try (FileChannel channel = FileChannel.open(binary, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.order(ByteOrder.BIG_ENDIAN);
+
+      if (buffer.remaining() < BINARY_HEADER_SIZE
+          || buffer.getInt() != BINARY_MAGIC
+          || buffer.getInt() != BINARY_VERSION) {
+        throw new IOException("Not a binary network range index: " + binary);
+      }
+
+      int v4Count = buffer.getInt();
+      int v6Count = buffer.getInt();
+      int labelCount = buffer.getInt();
+      buffer.getInt();
+
+      long expectedSize = BINARY_HEADER_SIZE + 32L * v6Count + 4L * v6Count + 12L * v4Count;
+      if (v4Count < 0 || v6Count < 0 || labelCount < 0 || expectedSize > buffer.limit()) {
+        throw new IOException("Corrupt binary network range index: " + binary);
+      }
+
+      long[] v6StartsHigh = readLongs(buffer, v6Count);
+      long[] v6StartsLow = readLongs(buffer, v6Count);
+      long[] v6EndsHigh = readLongs(buffer, v6Count);
+      long[] v6EndsLow = readLongs(buffer, v6Count);
+      int[] v6Labels = readInts(buffer, v6Count);
+      int[] v4Starts = readInts(buffer, v4Count);
+      int[] v4Ends = readInts(buffer, v4Count);
+      int[] v4Labels = readInts(buffer, v4Count);
+
+      String[] labels = new String[labelCount];
+      for (int i = 0; i < labelCount; i++) {
+        int length = buffer.remaining() < 4 ? -1 : buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+          throw new IOException("Corrupt binary network range index: " + binary);
+        }
+        byte[] label = new byte[length];
+        buffer.get(label);
+        labels[i] = new String(label, StandardCharsets.UTF_8);
+      }
+
+      checkLabelIds(v4Labels, labelCount, binary);
+      checkLabelIds(v6Labels, labelCount, binary);
+
+      return new NetworkRangeIndex(v4Starts, v4Ends, v4Labels, v6StartsHigh, v6StartsLow,
+          v6EndsHigh, v6EndsLow, v6Labels, labels);
+    }
+  }
+
+  /**
+   * Write this index in its binary form, which can be loaded with {@link #fromBinary(Path)}.
+   *
+   * @param binary Path of the file to write, an existing file is replaced
+   * @throws IOException If {@code binary} cannot be written
+   */
+  public void writeBinary(final Path binary) throws IOException {
+    Objects.requireNonNull(binary);
+
+    byte[][] encodedLabels = new byte[labels.length][];
+    long size = BINARY_HEADER_SIZE + 36L * v6Labels.length + 12L * v4Labels.length;
+    for (int i = 0; i < labels.length; i++) {
+      encodedLabels[i] = labels[i].getBytes(StandardCharsets.UTF_8);
+      size += 4 + encodedLabels[i].length;
+    }
+
+    try (FileChannel channel = FileChannel.open(binary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.order(ByteOrder.BIG_ENDIAN);
+
+      buffer.putInt(BINARY_MAGIC);
+      buffer.putInt(BINARY_VERSION);
+      buffer.putInt(v4Labels.length);
+      buffer.putInt(v6Labels.length);
+      buffer.putInt(labels.length);
+      buffer.putInt(0);
+
+      writeLongs(buffer, v6StartsHigh);
+      writeLongs(buffer, v6StartsLow);
+      writeLongs(buffer, v6EndsHigh);
+      writeLongs(buffer, v6EndsLow);
+      writeInts(buffer, v6Labels);
+      writeInts(buffer, v4Starts);
+      writeInts(buffer, v4Ends);
+      writeInts(buffer, v4Labels);
+
+      for (byte[] label : encodedLabels) {
+        buffer.putInt(label.length);
+        buffer.put(label);
+      }
+
+      buffer.force();
+    }
+  }
+
+  /**
+   * Look up the label of the range containing a given IP address.
+   *
+   * <p>Precondition: {@code address} it not equals null</p>
+   *
+   * @param address Any IP address
+   * @return Label of the range containing {@code address} or null if there is none
+   */
+  public String lookup(final InetAddress address) {
+    byte[] octets = Objects.requireNonNull(address).getAddress();
+
+    return lookup(octets, 0, octets.length);
+  }
+
+  /**
+   * Look up the label of the range containing an IP address stored in a byte array.
+   *
+   * This method does not create any object and is meant to be used together with
+   * {@link Bauta#maskAnyInPlace(byte[], int, int)}.
+   *
+   * @param address Array holding the IP address in network byte order
+   * @param offset Index of the first byte of the IP address
+   * @param length Length of the IP address, either 4 or 16
+   * @return Label of the range containing the address or null if there is none
+   * @throws IllegalArgumentException If {@code length} is neither 4 nor 16
+   */
+  public String lookup(final byte[] address, int offset, int length) {
+    if (length == AddressUtil.IPV4_BYTE_COUNT) {
+      return lookupIPv4(readInt(address, offset));
+    } else if (length == AddressUtil.IPV6_BYTE_COUNT) {
+      return lookupIPv6(readLong(address, offset), readLong(address, offset + 8));
+    } else {
+      throw new IllegalArgumentException("Invalid address length. Has to be 4 or 16");
+    }
+  }
+
+  /**
+   * Look up the label of the range containing an IP version 4 address.
+   *
+   * @param address IP version 4 address in network byte order, e.g. 0xCB007000 for 203.0.112.0
+   * @return Label of the range containing {@code address} or null if there is none
+   */
+  public String lookupIPv4(int address) {
+    int key = address ^ IPV4_SIGN_FLIP;
+    int low = 0;
+    int high = v4Starts.length - 1;
+    int candidate = NOT_FOUND;
+
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (v4Starts[middle] <= key) {
+        candidate = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+
+    if (candidate == NOT_FOUND || v4Ends[candidate] < key) {
+      return null;
+    }
+
+    return labels[v4Labels[candidate]];
+  }
+
+  /**
+   * Look up the label of the range containing an IP version 6 address.
+   *
+   * IP version 4 mapped addresses within {@code ::ffff:0:0/96} are looked up among the IP version
+   * 4 ranges, the same way as {@link #lookup(InetAddress)} does, since {@link InetAddress} turns
+   * them into IP version 4 addresses.
+   *
+   * @param addressHigh Upper 64 bits of the IP version 6 address
+   * @param addressLow Lower 64 bits of the IP version 6 address
+   * @return Label of the range containing the address or null if there is none
+   */
+  public String lookupIPv6(long addressHigh, long addressLow) {
+    if (addressHigh == 0 && (addressLow & IPV4_MAPPED_MASK) == IPV4_MAPPED_PREFIX) {
+      return lookupIPv4((int) addressLow);
+    }
+
+    long keyHigh = addressHigh ^ IPV6_SIGN_FLIP;
+    long keyLow = addressLow ^ IPV6_SIGN_FLIP;
+    int low = 0;
+    int high = v6StartsHigh.length - 1;
+    int candidate = NOT_FOUND;
+
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long startHigh = v6StartsHigh[middle];
+      if (startHigh < keyHigh || (startHigh == keyHigh && v6StartsLow[middle] <= keyLow)) {
+        candidate = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+
+    if (candidate == NOT_FOUND) {
+      return null;
+    }
+
+    long endHigh = v6EndsHigh[candidate];
+    if (endHigh < keyHigh || (endHigh == keyHigh && v6EndsLow[candidate] < keyLow)) {
+      return null;
+    }
+
+    return labels[v6Labels[candidate]];
+  }
+
+  /**
+   * Get the amount of IP version 4 and 6 ranges in this index.
+   *
+   * @return Amount of ranges
+   */
+  public int size() {
+    return v4Starts.length + v6StartsHigh.length;
+  }
+
+  private static byte[] parseAddress(final String literal, int lineNumber) {
+    boolean isIPv6 = literal.indexOf(':') >= 0;
+    boolean isLiteral = !literal.isEmpty();
+
+    for (int i = 0; i < literal.length() && isLiteral; i++) {
+      char c = literal.charAt(i);
+      isLiteral = (c >= '0' && c <= '9') || c == '.'
+          || (isIPv6 && (c == ':' || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')));
+    }
+
+    // only IP literals are accepted, InetAddress would otherwise resolve host names
+    if (!isLiteral) {
+      throw new IllegalArgumentException("Invalid IP address on line " + lineNumber);
+    }
+
+    // InetAddress silently accepts shorthand like 10.1 for 10.0.0.1, which hides truncated fields
+    if (!isIPv6) {
+      return parseIPv4Address(literal, lineNumber);
+    }
+
+    try {
+      return InetAddress.getByName(literal).getAddress();
+    } catch (UnknownHostException e) {
+      throw new IllegalArgumentException("Invalid IP address on line " + lineNumber, e);
+    }
+  }
+
+  private static byte[] parseIPv4Address(final String literal, int lineNumber) {
+    byte[] address = new byte[AddressUtil.IPV4_BYTE_COUNT];
+    int octet = 0;
+    int value = 0;
+    int digits = 0;
+
+    for (int i = 0; i <= literal.length(); i++) {
+      char c = i < literal.length() ? literal.charAt(i) : '.';
+      if (c == '.') {
+        if (digits == 0 || octet == AddressUtil.IPV4_BYTE_COUNT) {
+          throw new IllegalArgumentException("Invalid IP address on line " + lineNumber);
+        }
+        address[octet++] = (byte) value;
+        value = 0;
+        digits = 0;
+      } else {
+        value = 10 * value + (c - '0');
+        if (++digits > 3 || value > 255) {
+          throw new IllegalArgumentException("Invalid IP address on line " + lineNumber);
+        }
+      }
+    }
+
+    if (octet != AddressUtil.IPV4_BYTE_COUNT) {
+      throw new IllegalArgumentException("Invalid IP address on line " + lineNumber);
+    }
+    return address;
+  }
+
+  private static void checkOverlapping(final List<Range> ranges) {
+    for (int i = 1; i < ranges.size(); i++) {
+      Range previous = ranges.get(i - 1);
+      if (ranges.get(i).compareStartTo(previous.endHigh, previous.endLow) <= 0) {
+        throw new IllegalArgumentException("Overlapping ranges are not supported");
+      }
+    }
+  }
+
+  private static void checkLabelIds(final int[] labelIds, int labelCount, final Path binary)
+      throws IOException {
+    for (int labelId : labelIds) {
+      if (labelId < 0 || labelId >= labelCount) {
+        throw new IOException("Corrupt binary network range index: " + binary);
+      }
+    }
+  }
+
+  private static long[] readLongs(final ByteBuffer buffer, int count) {
+    long[] values = new long[count];
+    buffer.asLongBuffer().get(values);
+    buffer.position(buffer.position() + 8 * count);
+    return values;
+  }
+
+  private static int[] readInts(final ByteBuffer buffer, int count) {
+    int[] values = new int[count];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + 4 * count);
+    return values;
+  }
+
+  private static void writeLongs(final ByteBuffer buffer, final long[] values) {
+    buffer.asLongBuffer().put(values);
+    buffer.position(buffer.position() + 8 * values.length);
+  }
+
+  private static void writeInts(final ByteBuffer buffer, final int[] values) {
+    buffer.asIntBuffer().put(values);
+    buffer.position(buffer.position() + 4 * values.length);
+  }
+
+  private static int readInt(final byte[] bytes, int offset) {
+    return ((bytes[offset] & 0xFF) << 24)
+        | ((bytes[offset + 1] & 0xFF) << 16)
+        | ((bytes[offset + 2] & 0xFF) << 8)
+        | (bytes[offset + 3] & 0xFF);
+  }
+
+  private static long readLong(final byte[] bytes, int offset) {
+    return ((long) readInt(bytes, offset) << 32) | (readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Address range used while building an index, IP version 4 ranges only use the lower bits.
+   */
+  private static class Range implements Comparable<Range> {
+
+    private final long startHigh;
+    private final long startLow;
+    private final long endHigh;
+    private final long endLow;
+    private final int label;
+
+    private Range(final byte[] start, final byte[] end, int label) {
+      if (start.length == AddressUtil.IPV4_BYTE_COUNT) {
+        this.startHigh = 0;
+        this.startLow = readInt(start, 0) & 0xFFFFFFFFL;
+        this.endHigh = 0;
+        this.endLow = readInt(end, 0) & 0xFFFFFFFFL;
+      } else {
+        this.startHigh = readLong(start, 0);
+        this.startLow = readLong(start, 8);
+        this.endHigh = readLong(end, 0);
+        this.endLow = readLong(end, 8);
+      }
+      this.label = label;
+    }
+
+    private int compareStartTo(long high, long low) {
+      int result = Long.compareUnsigned(startHigh, high);
+      return result != 0 ? result : Long.compareUnsigned(startLow, low);
+    }
+
+    @Override
+    public int compareTo(final Range other) {
+      return compareStartTo(other.startHigh, other.startLow);
+    }
+  }
+}
@@ -0,0 +1,754 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Anonymiser for pcap and pcapng capture files.
+ *
+ * The capture file is memory-mapped and rewritten in place: source and destination addresses of
+ * all IP version 4 and 6 packets are masked with a Bauta context. The IP header checksum as well
+ * as TCP, UDP and ICMPv6 checksums are updated incrementally according to RFC 1624, so that the
+ * payload is never summed up again. Addresses of the original datagram quoted in ICMP error
+ * messages are masked as well, including the checksum of its transport header as far as it has
+ * been quoted. So are the addresses of IP version 6 routing headers.
+ *
+ * <p>Address resolution is covered as well: the sender and target addresses of ARP packets as
+ * well as the target addresses of neighbor discovery messages and redirects are masked. Addresses
+ * within application payloads such as DNS or DHCP messages, router advertisement prefixes and
+ * multicast listener reports are left untouched.</p>
+ *
+ * <p>Addresses within pcapng metadata are masked too, i.e. the interface addresses of interface
+ * description blocks and the records of name resolution blocks. Since host names would reveal the
+ * original addresses just as well, the host names of name resolution records are cleared.</p>
+ *
+ * <p>Supported link types are Ethernet (including VLAN tags), Linux cooked capture and raw IP.
+ * Capture files with other link types are rejected, since their addresses would be left
+ * untouched. A truncated last packet, as left behind by an interrupted capture, is ignored. A
+ * packet length exceeding 256 KiB, the limit of libpcap, or the original length of the packet is
+ * rejected as corrupt instead. The snapshot length of the file header is not relied upon, since
+ * some writers leave it at zero or below the length of their packets.</p>
+ *
+ * <p>An instance is not thread-safe, but separate instances may process separate files
+ * concurrently.</p>
+ */
+public class PcapAnonymiser {
+
+  private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+  private static final int PCAP_MAGIC_MICROSECONDS = 0xA1B2C3D4;
+  private static final int PCAP_MAGIC_NANOSECONDS = 0xA1B23C4D;
+  private static final int PCAP_HEADER_SIZE = 24;
+  private static final int PCAP_RECORD_HEADER_SIZE = 16;
+  private static final int MAX_PACKET_SIZE = 256 * 1024;
+
+  private static final int PCAPNG_SECTION_HEADER = 0x0A0D0D0A;
+  private static final int PCAPNG_INTERFACE_DESCRIPTION = 0x00000001;
+  private static final int PCAPNG_OBSOLETE_PACKET = 0x00000002;
+  private static final int PCAPNG_SIMPLE_PACKET = 0x00000003;
+  private static final int PCAPNG_NAME_RESOLUTION = 0x00000004;
+  private static final int PCAPNG_ENHANCED_PACKET = 0x00000006;
+  private static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+  private static final int PCAPNG_BLOCK_MINIMUM_SIZE = 12;
+
+  private static final int OPTION_END = 0;
+  private static final int OPTION_INTERFACE_IPV4_ADDRESS = 4;
+  private static final int OPTION_INTERFACE_IPV6_ADDRESS = 5;
+  private static final int OPTION_DNS_SERVER_IPV4_ADDRESS = 3;
+  private static final int OPTION_DNS_SERVER_IPV6_ADDRESS = 4;
+  private static final int NAME_RECORD_END = 0;
+  private static final int NAME_RECORD_IPV4 = 1;
+  private static final int NAME_RECORD_IPV6 = 2;
+
+  private static final int LINKTYPE_ETHERNET = 1;
+  private static final int LINKTYPE_RAW = 101;
+  private static final int LINKTYPE_LINUX_SLL = 113;
+  private static final int LINKTYPE_IPV4 = 228;
+  private static final int LINKTYPE_IPV6 = 229;
+
+  private static final int ETHERTYPE_IPV4 = 0x0800;
+  private static final int ETHERTYPE_IPV6 = 0x86DD;
+  private static final int ETHERTYPE_ARP = 0x0806;
+  private static final int ETHERTYPE_RARP = 0x8035;
+  private static final int ETHERTYPE_VLAN = 0x8100;
+  private static final int ETHERTYPE_QINQ = 0x88A8;
+
+  private static final int PROTOCOL_HOP_BY_HOP = 0;
+  private static final int PROTOCOL_ICMP = 1;
+  private static final int PROTOCOL_TCP = 6;
+  private static final int PROTOCOL_UDP = 17;
+  private static final int PROTOCOL_ROUTING = 43;
+  private static final int PROTOCOL_FRAGMENT = 44;
+  private static final int PROTOCOL_AUTHENTICATION = 51;
+  private static final int PROTOCOL_ICMPV6 = 58;
+  private static final int PROTOCOL_DESTINATION_OPTIONS = 60;
+
+  private static final int ICMPV6_NEIGHBOR_SOLICITATION = 135;
+  private static final int ICMPV6_NEIGHBOR_ADVERTISEMENT = 136;
+  private static final int ICMPV6_REDIRECT = 137;
+  private static final int ND_OPTION_REDIRECTED_HEADER = 4;
+
+  private static final int ROUTING_TYPE_SOURCE_ROUTE = 0;
+  private static final int ROUTING_TYPE_MOBILE_IPV6 = 2;
+  private static final int ROUTING_TYPE_SEGMENT_ROUTING = 4;
+
+  private static final int IPV4_HEADER_SIZE = 20;
+  private static final int IPV6_HEADER_SIZE = 40;
+
+  private final Bauta bauta;
+  private final byte[] address = new byte[AddressUtil.IPV6_BYTE_COUNT];
+  private int routingFinalDestinationDelta;
+
+  private int pcapLinkType;
+  private int[] interfaceLinkTypes = new int[4];
+  private int interfaceCount;
+  private long packetCount;
+
+  /**
+   * Initialise an anonymiser masking all addresses with the given Bauta context.
+   *
+   * <p>Precondition: bauta is not equals null</p>
+   *
+   * @param bauta Bauta context used for masking
+   */
+  public PcapAnonymiser(final Bauta bauta) {
+    this.bauta = Objects.requireNonNull(bauta);
+  }
+
+  /**
+   * Mask the IP addresses of a pcap or pcapng capture file in place, as described above.
+   *
+   * @param capture Path to a pcap or pcapng capture file
+   * @return Amount of packets processed
+   * @throws IOException If {@code capture} cannot be read or written, is neither a pcap nor a
+   *     pcapng file or uses an unsupported link type
+   */
+  public long anonymise(final Path capture) throws IOException {
+    Objects.requireNonNull(capture);
+
+    packetCount = 0;
+    interfaceCount = 0;
+
+    try (FileChannel channel = FileChannel.open(capture, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(PCAP_HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // read the whole header or up to the end of the file
+      }
+      header.flip();
+
+      if (header.remaining() < PCAPNG_BLOCK_MINIMUM_SIZE) {
+        throw new IOException("Not a pcap or pcapng capture file: " + capture);
+      }
+
+      int magic = header.getInt(0);
+      if (magic == PCAPNG_SECTION_HEADER) {
+        walkWindows(channel, 0, true, ByteOrder.BIG_ENDIAN);
+      } else {
+        ByteOrder order = pcapByteOrder(magic);
+        if (order == null || header.remaining() < PCAP_HEADER_SIZE) {
+          throw new IOException("Not a pcap or pcapng capture file: " + capture);
+        }
+
+        pcapLinkType = header.order(order).getInt(20) & 0xFFFF;
+        checkLinkType(pcapLinkType);
+        walkWindows(channel, PCAP_HEADER_SIZE, false, order);
+      }
+    }
+
+    return packetCount;
+  }
+
+  /*
+   * Files larger than a single mapping are processed in consecutive windows, each starting at the
+   * first record which did not entirely fit into the previous one.
+   */
+  private void walkWindows(final FileChannel channel, long start, boolean isPcapng,
+      ByteOrder order) throws IOException {
+    long size = channel.size();
+    long position = start;
+
+    while (position < size) {
+      long windowSize = Math.min(MAX_WINDOW_SIZE, size - position);
+      MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_WRITE, position, windowSize);
+      window.order(order);
+
+      int consumed = isPcapng ? walkPcapngBlocks(window) : walkPcapRecords(window, position);
+      order = window.order();
+
+      if (consumed == 0) {
+        if (windowSize == MAX_WINDOW_SIZE) {
+          throw new IOException("Record at offset " + position + " exceeds mapping window");
+        }
+        break;
+      }
+      position += consumed;
+    }
+  }
+
+  /*
+   * A record not fitting into the window is left for the next window, or ignored if it is the
+   * truncated last record of the file. Lengths are validated first, so that a corrupt record does
+   * not pass for a truncated one and leave all following packets unmasked.
+   */
+  private int walkPcapRecords(final ByteBuffer window, long position) throws IOException {
+    int offset = 0;
+
+    while (window.limit() - offset >= PCAP_RECORD_HEADER_SIZE) {
+      long capturedLength = window.getInt(offset + 8) & 0xFFFFFFFFL;
+      long originalLength = window.getInt(offset + 12) & 0xFFFFFFFFL;
+      if (capturedLength > MAX_PACKET_SIZE || capturedLength > originalLength) {
+        throw new IOException("Corrupt pcap record length " + capturedLength + " at offset "
+            + (position + offset));
+      }
+
+      int packet = offset + PCAP_RECORD_HEADER_SIZE;
+      if (capturedLength > window.limit() - packet) {
+        break;
+      }
+
+      maskPacket(window, packet, packet + (int) capturedLength, pcapLinkType);
+      offset = packet + (int) capturedLength;
+    }
+
+    return offset;
+  }
+
+  private int walkPcapngBlocks(final ByteBuffer window) throws IOException {
+    int offset = 0;
+
+    while (window.limit() - offset >= PCAPNG_BLOCK_MINIMUM_SIZE) {
+      int type = window.getInt(offset);
+      if (type == PCAPNG_SECTION_HEADER) {
+        window.order(pcapngByteOrder(getInt32(window, offset + 8)));
+        interfaceCount = 0;
+      }
+
+      int blockLength = window.getInt(offset + 4);
+      if (blockLength < PCAPNG_BLOCK_MINIMUM_SIZE || blockLength % 4 != 0) {
+        throw new IOException("Corrupt pcapng block length " + blockLength);
+      }
+      if (blockLength > window.limit() - offset) {
+        break;
+      }
+
+      int bodyEnd = offset + blockLength - 4;
+      switch (type) {
+        case PCAPNG_INTERFACE_DESCRIPTION:
+          checkBlockLength(blockLength, 20);
+          addInterface(window.getShort(offset + 8) & 0xFFFF);
+          maskPcapngOptions(window, offset + 16, bodyEnd, OPTION_INTERFACE_IPV4_ADDRESS,
+              OPTION_INTERFACE_IPV6_ADDRESS);
+          break;
+        case PCAPNG_NAME_RESOLUTION:
+          maskPcapngOptions(window, maskNameRecords(window, offset + 8, bodyEnd), bodyEnd,
+              OPTION_DNS_SERVER_IPV4_ADDRESS, OPTION_DNS_SERVER_IPV6_ADDRESS);
+          break;
+        case PCAPNG_ENHANCED_PACKET:
+          checkBlockLength(blockLength, 32);
+          maskPcapngPacket(window, window.getInt(offset + 8), offset + 28,
+              window.getInt(offset + 20), bodyEnd);
+          break;
+        case PCAPNG_OBSOLETE_PACKET:
+          checkBlockLength(blockLength, 32);
+          maskPcapngPacket(window, window.getShort(offset + 8) & 0xFFFF, offset + 28,
+              window.getInt(offset + 20), bodyEnd);
+          break;
+        case PCAPNG_SIMPLE_PACKET:
+          checkBlockLength(blockLength, 16);
+          maskPcapngPacket(window, 0, offset + 12,
+              Math.min(window.getInt(offset + 8), bodyEnd - offset - 12), bodyEnd);
+          break;
+        default:
+          break;
+      }
+      offset += blockLength;
+    }
+
+    return offset;
+  }
+
+  private static void checkBlockLength(int blockLength, int minimumLength) throws IOException {
+    if (blockLength < minimumLength) {
+      throw new IOException("Corrupt pcapng block length " + blockLength);
+    }
+  }
+
+  private void addInterface(int linkType) throws IOException {
+    checkLinkType(linkType);
+
+    if (interfaceCount == interfaceLinkTypes.length) {
+      interfaceLinkTypes = Arrays.copyOf(interfaceLinkTypes, interfaceCount * 2);
+    }
+    interfaceLinkTypes[interfaceCount++] = linkType;
+  }
+
+  /*
+   * Masks the addresses of all name resolution records and clears their host names. Returns the
+   * offset of the options following the records.
+   */
+  private int maskNameRecords(final ByteBuffer window, int offset, int end) throws IOException {
+    while (end - offset >= 4) {
+      int type = window.getShort(offset) & 0xFFFF;
+      int value = offset + 4;
+      int length = getValueLength(window, offset, end);
+      offset = value + padded(length);
+
+      if (type == NAME_RECORD_END) {
+        break;
+      } else if (type == NAME_RECORD_IPV4 && length >= AddressUtil.IPV4_BYTE_COUNT) {
+        maskIPv4Address(window, value);
+        clear(window, value + AddressUtil.IPV4_BYTE_COUNT, value + length);
+      } else if (type == NAME_RECORD_IPV6 && length >= AddressUtil.IPV6_BYTE_COUNT) {
+        maskIPv6Address(window, value);
+        clear(window, value + AddressUtil.IPV6_BYTE_COUNT, value + length);
+      } else {
+        // records of unknown types might hold addresses as well
+        clear(window, value, value + length);
+      }
+    }
+
+    return offset;
+  }
+
+  private void maskPcapngOptions(final ByteBuffer window, int offset, int end, int ipv4Option,
+      int ipv6Option) throws IOException {
+    while (end - offset >= 4) {
+      int code = window.getShort(offset) & 0xFFFF;
+      int value = offset + 4;
+      int length = getValueLength(window, offset, end);
+      offset = value + padded(length);
+
+      if (code == OPTION_END) {
+        break;
+      } else if (code == ipv4Option && length >= AddressUtil.IPV4_BYTE_COUNT) {
+        maskIPv4Address(window, value);
+      } else if (code == ipv6Option && length >= AddressUtil.IPV6_BYTE_COUNT) {
+        maskIPv6Address(window, value);
+      }
+    }
+  }
+
+  private static int getValueLength(final ByteBuffer window, int offset, int end)
+      throws IOException {
+    int length = window.getShort(offset + 2) & 0xFFFF;
+    if (length > end - offset - 4) {
+      throw new IOException("Corrupt pcapng option length " + length);
+    }
+    return length;
+  }
+
+  private static int padded(int length) {
+    return (length + 3) & ~3;
+  }
+
+  /*
+   * Returns the one's complement difference of the cleared bytes, assuming offset to be even
+   * relative to the start of the checksummed data.
+   */
+  private static int clear(final ByteBuffer buffer, int offset, int end) {
+    int delta = 0;
+    for (int i = offset; i < end; i++) {
+      int shift = (i - offset) % 2 == 0 ? 8 : 0;
+      delta += wordDelta((buffer.get(i) & 0xFF) << shift, 0);
+      buffer.put(i, (byte) 0);
+    }
+    return delta;
+  }
+
+  private void maskPcapngPacket(final ByteBuffer window, int interfaceId, int packet,
+      int capturedLength, int bodyEnd) throws IOException {
+    if (interfaceId < 0 || interfaceId >= interfaceCount) {
+      throw new IOException("Packet refers to unknown interface " + interfaceId);
+    }
+    if (capturedLength < 0 || capturedLength > bodyEnd - packet) {
+      throw new IOException("Corrupt pcapng packet length " + capturedLength);
+    }
+
+    maskPacket(window, packet, packet + capturedLength, interfaceLinkTypes[interfaceId]);
+  }
+
+  private void maskPacket(final ByteBuffer buffer, int offset, int end, int linkType) {
+    packetCount++;
+
+    int etherType;
+    switch (linkType) {
+      case LINKTYPE_ETHERNET:
+        if (end - offset < 14) {
+          return;
+        }
+        etherType = getInt16(buffer, offset + 12);
+        offset += 14;
+        while ((etherType == ETHERTYPE_VLAN || etherType == ETHERTYPE_QINQ)
+            && end - offset >= 4) {
+          etherType = getInt16(buffer, offset + 2);
+          offset += 4;
+        }
+        break;
+      case LINKTYPE_LINUX_SLL:
+        if (end - offset < 16) {
+          return;
+        }
+        etherType = getInt16(buffer, offset + 14);
+        offset += 16;
+        break;
+      default:
+        if (end - offset < 1) {
+          return;
+        }
+        etherType = (buffer.get(offset) & 0xF0) == 0x60 ? ETHERTYPE_IPV6 : ETHERTYPE_IPV4;
+        break;
+    }
+
+    if (etherType == ETHERTYPE_IPV4) {
+      maskIPv4Packet(buffer, offset, end, false);
+    } else if (etherType == ETHERTYPE_IPV6) {
+      maskIPv6Packet(buffer, offset, end, false);
+    } else if (etherType == ETHERTYPE_ARP || etherType == ETHERTYPE_RARP) {
+      maskArpPacket(buffer, offset, end);
+    }
+  }
+
+  /*
+   * Masks the sender and target protocol addresses of ARP packets resolving IP version 4
+   * addresses. The hardware addresses in between are of variable length.
+   */
+  private void maskArpPacket(final ByteBuffer buffer, int offset, int end) {
+    if (end - offset < 8 || getInt16(buffer, offset + 2) != ETHERTYPE_IPV4
+        || buffer.get(offset + 5) != AddressUtil.IPV4_BYTE_COUNT) {
+      return;
+    }
+
+    int hardwareLength = buffer.get(offset + 4) & 0xFF;
+    int sender = offset + 8 + hardwareLength;
+    int target = sender + AddressUtil.IPV4_BYTE_COUNT + hardwareLength;
+    if (end - sender >= AddressUtil.IPV4_BYTE_COUNT) {
+      maskIPv4Address(buffer, sender);
+    }
+    if (end - target >= AddressUtil.IPV4_BYTE_COUNT) {
+      maskIPv4Address(buffer, target);
+    }
+  }
+
+  /*
+   * Returns the one's complement difference of all changed bytes, which enclosing checksums such
+   * as the one of an ICMP error message have to be updated with.
+   */
+  private int maskIPv4Packet(final ByteBuffer buffer, int offset, int end, boolean isQuoted) {
+    if (end - offset < IPV4_HEADER_SIZE || (buffer.get(offset) & 0xF0) != 0x40) {
+      return 0;
+    }
+
+    int headerLength = (buffer.get(offset) & 0x0F) * 4;
+    if (headerLength < IPV4_HEADER_SIZE) {
+      return 0;
+    }
+
+    int addressDelta = maskIPv4Address(buffer, offset + 12) + maskIPv4Address(buffer, offset + 16);
+    int delta = addressDelta + updateChecksum(buffer, offset + 10, addressDelta);
+
+    boolean isFirstFragment = (getInt16(buffer, offset + 6) & 0x1FFF) == 0;
+    if (isFirstFragment && headerLength <= end - offset) {
+      int protocol = buffer.get(offset + 9) & 0xFF;
+      delta += maskTransport(buffer, protocol, offset + headerLength, end, addressDelta, isQuoted);
+    }
+
+    return delta;
+  }
+
+  private int maskIPv6Packet(final ByteBuffer buffer, int offset, int end, boolean isQuoted) {
+    if (end - offset < IPV6_HEADER_SIZE || (buffer.get(offset) & 0xF0) != 0x60) {
+      return 0;
+    }
+
+    int sourceDelta = maskIPv6Address(buffer, offset + 8);
+    int destinationDelta = maskIPv6Address(buffer, offset + 24);
+    int delta = sourceDelta + destinationDelta;
+
+    // with a routing header the pseudo header holds the final destination instead
+    int finalDestinationDelta = destinationDelta;
+    int protocol = buffer.get(offset + 6) & 0xFF;
+    int position = offset + IPV6_HEADER_SIZE;
+
+    while (true) {
+      if (protocol == PROTOCOL_HOP_BY_HOP || protocol == PROTOCOL_ROUTING
+          || protocol == PROTOCOL_DESTINATION_OPTIONS) {
+        if (end - position < 8) {
+          return delta;
+        }
+        int headerEnd = position + ((buffer.get(position + 1) & 0xFF) + 1) * 8;
+        if (protocol == PROTOCOL_ROUTING) {
+          delta += maskRoutingHeader(buffer, position, Math.min(headerEnd, end));
+          if (buffer.get(position + 3) != 0) {
+            finalDestinationDelta = routingFinalDestinationDelta;
+          }
+        }
+        protocol = buffer.get(position) & 0xFF;
+        position = headerEnd;
+      } else if (protocol == PROTOCOL_AUTHENTICATION) {
+        if (end - position < 8) {
+          return delta;
+        }
+        protocol = buffer.get(position) & 0xFF;
+        position += ((buffer.get(position + 1) & 0xFF) + 2) * 4;
+      } else if (protocol == PROTOCOL_FRAGMENT) {
+        if (end - position < 8 || (getInt16(buffer, position + 2) & 0xFFF8) != 0) {
+          return delta;
+        }
+        protocol = buffer.get(position) & 0xFF;
+        position += 8;
+      } else {
+        break;
+      }
+    }
+
+    if (position <= end) {
+      delta += maskTransport(buffer, protocol, position, end, sourceDelta + finalDestinationDelta,
+          isQuoted);
+    }
+
+    return delta;
+  }
+
+  /*
+   * Masks the addresses of routing headers of type 0, 2 and 4 (segment routing) and clears the
+   * data of other types, whose addresses might be compressed. The difference caused by masking
+   * the final destination is left in routingFinalDestinationDelta.
+   */
+  private int maskRoutingHeader(final ByteBuffer buffer, int offset, int end) {
+    int headerLength = (buffer.get(offset + 1) & 0xFF) * 8;
+    int type = buffer.get(offset + 2) & 0xFF;
+    int first = offset + 8;
+    int last;
+
+    switch (type) {
+      case ROUTING_TYPE_SOURCE_ROUTE:
+        last = first + (headerLength / 16 - 1) * 16;
+        break;
+      case ROUTING_TYPE_MOBILE_IPV6:
+        last = first;
+        break;
+      case ROUTING_TYPE_SEGMENT_ROUTING:
+        // the segment list is stored in reverse order, the final destination comes first
+        last = first + Math.min(buffer.get(offset + 4) & 0xFF, headerLength / 16 - 1) * 16;
+        break;
+      default:
+        routingFinalDestinationDelta = 0;
+        return clear(buffer, first, end);
+    }
+
+    int delta = 0;
+    int finalDestination = type == ROUTING_TYPE_SEGMENT_ROUTING ? first : last;
+    routingFinalDestinationDelta = 0;
+    for (int address = first; address <= last && end - address >= 16; address += 16) {
+      int addressDelta = maskIPv6Address(buffer, address);
+      delta += addressDelta;
+      if (address == finalDestination) {
+        routingFinalDestinationDelta = addressDelta;
+      }
+    }
+
+    return delta;
+  }
+
+  /*
+   * Updates the transport checksum with the difference of the pseudo header. Checksums of quoted
+   * datagrams are updated as far as they have been quoted, while ICMP errors are never quoted
+   * themselves and are therefore not looked into.
+   */
+  private int maskTransport(final ByteBuffer buffer, int protocol, int offset, int end,
+      int pseudoHeaderDelta, boolean isQuoted) {
+    int length = end - offset;
+
+    switch (protocol) {
+      case PROTOCOL_TCP:
+        return length >= 18 ? updateChecksum(buffer, offset + 16, pseudoHeaderDelta) : 0;
+      case PROTOCOL_UDP:
+        // a zero checksum means no checksum has been computed by the sender
+        if (length < 8 || getInt16(buffer, offset + 6) == 0) {
+          return 0;
+        }
+        int delta = updateChecksum(buffer, offset + 6, pseudoHeaderDelta);
+        if (getInt16(buffer, offset + 6) == 0) {
+          putInt16(buffer, offset + 6, 0xFFFF);
+        }
+        return delta;
+      case PROTOCOL_ICMP:
+        if (!isQuoted && length >= 8 && isICMPError(buffer.get(offset) & 0xFF)) {
+          int quotedDelta = maskIPv4Packet(buffer, offset + 8, end, true);
+          return updateChecksum(buffer, offset + 2, quotedDelta);
+        }
+        return 0;
+      case PROTOCOL_ICMPV6:
+        if (length < 4) {
+          return 0;
+        }
+        int type = buffer.get(offset) & 0xFF;
+        int messageDelta = 0;
+        if (!isQuoted && length >= 8 && type >= 1 && type <= 4) {
+          messageDelta = maskIPv6Packet(buffer, offset + 8, end, true);
+        } else if (!isQuoted) {
+          messageDelta = maskNeighborDiscovery(buffer, type, offset, end);
+        }
+        return updateChecksum(buffer, offset + 2, pseudoHeaderDelta + messageDelta);
+      default:
+        return 0;
+    }
+  }
+
+  /*
+   * Masks the target addresses of neighbor solicitations and advertisements, the target and
+   * destination addresses of redirects as well as the packet quoted by a redirected header option.
+   */
+  private int maskNeighborDiscovery(final ByteBuffer buffer, int type, int offset, int end) {
+    int addressCount;
+    switch (type) {
+      case ICMPV6_NEIGHBOR_SOLICITATION:
+      case ICMPV6_NEIGHBOR_ADVERTISEMENT:
+        addressCount = 1;
+        break;
+      case ICMPV6_REDIRECT:
+        addressCount = 2;
+        break;
+      default:
+        return 0;
+    }
+
+    int delta = 0;
+    int position = offset + 8;
+    for (int i = 0; i < addressCount; i++) {
+      if (end - position < AddressUtil.IPV6_BYTE_COUNT) {
+        return delta;
+      }
+      delta += maskIPv6Address(buffer, position);
+      position += AddressUtil.IPV6_BYTE_COUNT;
+    }
+
+    while (end - position >= 8) {
+      int optionLength = (buffer.get(position + 1) & 0xFF) * 8;
+      if (optionLength == 0) {
+        break;
+      }
+      if (buffer.get(position) == ND_OPTION_REDIRECTED_HEADER) {
+        delta += maskIPv6Packet(buffer, position + 8, Math.min(position + optionLength, end),
+            true);
+      }
+      position += optionLength;
+    }
+
+    return delta;
+  }
+
+  private static boolean isICMPError(int type) {
+    return type == 3 || type == 4 || type == 5 || type == 11 || type == 12;
+  }
+
+  private int maskIPv4Address(final ByteBuffer buffer, int offset) {
+    int original = getInt32(buffer, offset);
+    int masked = bauta.maskAny(original);
+
+    buffer.put(offset, (byte) (masked >>> 24));
+    buffer.put(offset + 1, (byte) (masked >>> 16));
+    buffer.put(offset + 2, (byte) (masked >>> 8));
+    buffer.put(offset + 3, (byte) masked);
+
+    return wordDelta(original >>> 16, masked >>> 16) + wordDelta(original, masked);
+  }
+
+  private int maskIPv6Address(final ByteBuffer buffer, int offset) {
+    for (int i = 0; i < address.length; i++) {
+      address[i] = buffer.get(offset + i);
+    }
+
+    bauta.maskAnyInPlace(address, 0, address.length);
+
+    int delta = 0;
+    for (int i = 0; i < address.length; i += 2) {
+      int original = getInt16(buffer, offset + i);
+      int masked = ((address[i] & 0xFF) << 8) | (address[i + 1] & 0xFF);
+      delta += wordDelta(original, masked);
+      buffer.put(offset + i, address[i]);
+      buffer.put(offset + i + 1, address[i + 1]);
+    }
+
+    return delta;
+  }
+
+  /*
+   * Incremental checksum update according to RFC 1624, equation 3: HC' = ~(~HC + ~m + m'). The
+   * returned value is the one's complement difference caused by changing the checksum itself.
+   */
+  private static int updateChecksum(final ByteBuffer buffer, int offset, int delta) {
+    int original = getInt16(buffer, offset);
+    int updated = ~fold((~original & 0xFFFF) + fold(delta)) & 0xFFFF;
+
+    putInt16(buffer, offset, updated);
+
+    return wordDelta(original, updated);
+  }
+
+  private static int wordDelta(int original, int updated) {
+    return (~original & 0xFFFF) + (updated & 0xFFFF);
+  }
+
+  private static int fold(int sum) {
+    while ((sum >>> 16) != 0) {
+      sum = (sum & 0xFFFF) + (sum >>> 16);
+    }
+    return sum;
+  }
+
+  private static int getInt16(final ByteBuffer buffer, int offset) {
+    return ((buffer.get(offset) & 0xFF) << 8) | (buffer.get(offset + 1) & 0xFF);
+  }
+
+  private static void putInt16(final ByteBuffer buffer, int offset, int value) {
+    buffer.put(offset, (byte) (value >>> 8));
+    buffer.put(offset + 1, (byte) value);
+  }
+
+  private static int getInt32(final ByteBuffer buffer, int offset) {
+    return (getInt16(buffer, offset) << 16) | getInt16(buffer, offset + 2);
+  }
+
+  private static ByteOrder pcapByteOrder(int magic) {
+    if (magic == PCAP_MAGIC_MICROSECONDS || magic == PCAP_MAGIC_NANOSECONDS) {
+      return ByteOrder.BIG_ENDIAN;
+    } else if (Integer.reverseBytes(magic) == PCAP_MAGIC_MICROSECONDS
+        || Integer.reverseBytes(magic) == PCAP_MAGIC_NANOSECONDS) {
+      return ByteOrder.LITTLE_ENDIAN;
+    } else {
+      return null;
+    }
+  }
+
+  private static ByteOrder pcapngByteOrder(int magic) throws IOException {
+    if (magic == PCAPNG_BYTE_ORDER_MAGIC) {
+      return ByteOrder.BIG_ENDIAN;
+    } else if (Integer.reverseBytes(magic) == PCAPNG_BYTE_ORDER_MAGIC) {
+      return ByteOrder.LITTLE_ENDIAN;
+    } else {
+      throw new IOException("Corrupt pcapng section header");
+    }
+  }
+
+  private static void checkLinkType(int linkType) throws IOException {
+    if (linkType != LINKTYPE_ETHERNET && linkType != LINKTYPE_RAW
+        && linkType != LINKTYPE_LINUX_SLL && linkType != LINKTYPE_IPV4
+        && linkType != LINKTYPE_IPV6) {
+      throw new IOException("Unsupported link type " + linkType);
+    }
+  }
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Batch masking of huge line based inputs, sorting the masked lines by masked network prefix.
+ *
+ * Every line is masked by a {@link TextMasker} and keyed by the masked address of its first IP
+ * literal. Lines sharing a masked prefix therefore end up next to each other, which makes per
+ * network reports a single pass over the output. Lines are ordered by the 128 bit value of their
+ * masked address, where IP version 4 addresses count as IP version 4 mapped addresses within
+ * {@code ::ffff:0:0/96}. IP version 4 addresses therefore sort together with their mapped form,
+ * after IP version 6 addresses below that range such as {@code ::1} and before all others. Lines
+ * without any IP literal come last. Lines with the same key keep their input order.
+ *
+ * <p>Inputs larger than the memory limit are sorted externally: lines are collected in an
+ * off-heap buffer, sorted by their primitive keys and spilled as sorted runs to temporary files,
+ * which are finally combined by a k-way merge. The off-heap buffers are allocated once and reused
+ * for all runs and merges. Memory used on the heap for keys amounts to roughly half the memory
+ * limit.</p>
+ *
+ * <p>An instance is not thread-safe.</p>
+ */
+public class PrefixSorter {
+
+  private static final int DEFAULT_MEMORY_LIMIT = 64 * 1024 * 1024;
+  private static final int MINIMUM_MEMORY_LIMIT = 64 * 1024;
+  private static final int MAXIMUM_STAGING_SIZE = 256 * 1024;
+  private static final int MINIMUM_READ_BUFFER_SIZE = 4 * 1024;
+  private static final int MAXIMUM_FAN_IN = 128;
+  private static final int MINIMUM_RECORD_COUNT = 256;
+  private static final int INPUT_CHUNK_SIZE = 64 * 1024;
+  private static final int RECORD_HEADER_SIZE = 20;
+  private static final long IPV4_MAPPED_PREFIX = 0xFFFF00000000L;
+  private static final long NO_ADDRESS = -1L;
+
+  private final TextMasker masker;
+  private final Path temporaryDirectory;
+
+  private final ByteBuffer data;
+  private final ByteBuffer dataView;
+  private final ByteBuffer staging;
+  private final DataStream dataStream = new DataStream();
+  private final byte[] chunk = new byte[INPUT_CHUNK_SIZE];
+  private byte[] line = new byte[1024];
+
+  private final long[] keyHigh;
+  private final long[] keyLow;
+  private final int[] offsets;
+  private final int[] order;
+  private final int[] scratch;
+  private int recordCount;
+
+  private WritableByteChannel target;
+
+  /**
+   * Initialise a sorter with a memory limit of 64 MiB using the default temporary directory.
+   *
+   * @param bauta Bauta context used for masking
+   */
+  public PrefixSorter(final Bauta bauta) {
+    this(bauta, DEFAULT_MEMORY_LIMIT, Paths.get(System.getProperty("java.io.tmpdir")));
+  }
+
+  /**
+   * Initialise a sorter with a custom memory limit and temporary directory.
+   *
+   * A single line, after masking, must not be larger than the memory limit.
+   *
+   * @param bauta Bauta context used for masking
+   * @param memoryLimit Size of the off-heap buffers in bytes, at least 64 KiB
+   * @param temporaryDirectory Directory for sorted runs, which are deleted after sorting
+   */
+  public PrefixSorter(final Bauta bauta, int memoryLimit, final Path temporaryDirectory) {
+    this.masker = new TextMasker(Objects.requireNonNull(bauta));
+    this.temporaryDirectory = Objects.requireNonNull(temporaryDirectory);
+
+    if (memoryLimit < MINIMUM_MEMORY_LIMIT) {
+      throw new IllegalArgumentException("Invalid memory limit. Has to be at least 64 KiB");
+    }
+
+    int stagingSize = Math.min(MAXIMUM_STAGING_SIZE, memoryLimit / 8);
+    this.staging = ByteBuffer.allocateDirect(stagingSize);
+    this.data = ByteBuffer.allocateDirect(memoryLimit - stagingSize);
+    this.dataView = data.duplicate();
+
+    int maximumRecordCount = Math.max(MINIMUM_RECORD_COUNT, memoryLimit / 64);
+    this.keyHigh = new long[maximumRecordCount];
+    this.keyLow = new long[maximumRecordCount];
+    this.offsets = new int[maximumRecordCount + 1];
+    this.order = new int[maximumRecordCount];
+    this.scratch = new int[maximumRecordCount];
+  }
+
+  /**
+   * Mask all lines of an input and write them sorted by masked prefix.
+   *
+   * The input is expected to be encoded in an ASCII compatible charset like UTF-8. Every line
+   * written is terminated by a line feed. Neither {@code input} nor {@code output} are closed.
+   *
+   * @param input Stream of lines to mask
+   * @param output Stream receiving the masked and sorted lines
+   * @return Amount of lines written
+   * @throws IOException If reading, writing or spilling to temporary files fails, or if a line
+   *     exceeds the memory limit
+   */
+  public long sort(final InputStream input, final OutputStream output) throws IOException {
+    Objects.requireNonNull(input);
+    Objects.requireNonNull(output);
+
+    List<Path> runs = new ArrayList<>();
+    List<Path> temporaryFiles = new ArrayList<>();
+    long lineCount = 0;
+
+    data.clear();
+    staging.clear();
+    recordCount = 0;
+
+    try {
+      int lineLength = 0;
+      int read;
+      while ((read = input.read(chunk)) != -1) {
+        int start = 0;
+        for (int i = 0; i < read; i++) {
+          if (chunk[i] != '\n') {
+            continue;
+          }
+          if (lineLength == 0) {
+            addRecord(chunk, start, i - start, runs, temporaryFiles);
+          } else {
+            lineLength = appendLine(start, i - start, lineLength);
+            addRecord(line, 0, lineLength, runs, temporaryFiles);
+            lineLength = 0;
+          }
+          lineCount++;
+          start = i + 1;
+        }
+        lineLength = appendLine(start, read - start, lineLength);
+      }
+      if (lineLength > 0) {
+        addRecord(line, 0, lineLength, runs, temporaryFiles);
+        lineCount++;
+      }
+
+      WritableByteChannel channel = Channels.newChannel(output);
+      if (runs.isEmpty()) {
+        sortRecords();
+        writeRecords(channel);
+      } else {
+        if (recordCount > 0) {
+          runs.add(spillRun(temporaryFiles));
+        }
+        merge(runs, channel, temporaryFiles);
+      }
+      output.flush();
+    } finally {
+      target = null;
+      for (Path file : temporaryFiles) {
+        Files.deleteIfExists(file);
+      }
+    }
+
+    return lineCount;
+  }
+
+  private int appendLine(int offset, int length, int lineLength) throws IOException {
+    if (lineLength + length > data.capacity()) {
+      throw new IOException("Line exceeds memory limit");
+    }
+    if (lineLength + length > line.length) {
+      line = Arrays.copyOf(line, Math.min(data.capacity(), 2 * (lineLength + length)));
+    }
+
+    System.arraycopy(chunk, offset, line, lineLength, length);
+    return lineLength + length;
+  }
+
+  private void addRecord(final byte[] text, int offset, int length, final List<Path> runs,
+      final List<Path> temporaryFiles) throws IOException {
+    if (recordCount == order.length) {
+      runs.add(spillRun(temporaryFiles));
+    }
+
+    int start = data.position();
+    dataStream.hasOverflown = false;
+    masker.mask(text, offset, length, dataStream);
+
+    if (dataStream.hasOverflown) {
+      data.position(start);
+      if (recordCount == 0) {
+        throw new IOException("Line exceeds memory limit");
+      }
+      runs.add(spillRun(temporaryFiles));
+
+      start = data.position();
+      dataStream.hasOverflown = false;
+      masker.mask(text, offset, length, dataStream);
+      if (dataStream.hasOverflown) {
+        throw new IOException("Line exceeds memory limit");
+      }
+    }
+
+    byte[] address = masker.getFirstAddress();
+    switch (masker.getFirstAddressLength()) {
+      case AddressUtil.IPV4_BYTE_COUNT:
+        keyHigh[recordCount] = 0;
+        keyLow[recordCount] = IPV4_MAPPED_PREFIX | (readInt(address, 0) & 0xFFFFFFFFL);
+        break;
+      case AddressUtil.IPV6_BYTE_COUNT:
+        keyHigh[recordCount] = readLong(address, 0);
+        keyLow[recordCount] = readLong(address, 8);
+        break;
+      default:
+        keyHigh[recordCount] = NO_ADDRESS;
+        keyLow[recordCount] = NO_ADDRESS;
+        break;
+    }
+    offsets[recordCount] = start;
+    recordCount++;
+    offsets[recordCount] = data.position();
+  }
+
+  /*
+   * Stable bottom-up merge sort of record indices, comparing the primitive keys only.
+   */
+  private void sortRecords() {
+    for (int i = 0; i < recordCount; i++) {
+      order[i] = i;
+    }
+
+    for (int width = 1; width < recordCount; width *= 2) {
+      for (int low = 0; low < recordCount - width; low += 2 * width) {
+        mergeRecords(low, low + width, Math.min(low + 2 * width, recordCount));
+      }
+    }
+  }
+
+  private void mergeRecords(int low, int middle, int high) {
+    System.arraycopy(order, low, scratch, low, high - low);
+
+    int left = low;
+    int right = middle;
+    for (int i = low; i < high; i++) {
+      if (right >= high || (left < middle && compareRecords(scratch[left], scratch[right]) <= 0)) {
+        order[i] = scratch[left++];
+      } else {
+        order[i] = scratch[right++];
+      }
+    }
+  }
+
+  private int compareRecords(int first, int second) {
+    return compareKeys(keyHigh[first], keyLow[first], keyHigh[second], keyLow[second]);
+  }
+
+  private static int compareKeys(long firstHigh, long firstLow, long secondHigh,
+      long secondLow) {
+    int result = Long.compareUnsigned(firstHigh, secondHigh);
+    return result != 0 ? result : Long.compareUnsigned(firstLow, secondLow);
+  }
+
+  private void writeRecords(final WritableByteChannel channel) throws IOException {
+    target = channel;
+    for (int i = 0; i < recordCount; i++) {
+      int record = order[i];
+      emitRecord(offsets[record], offsets[record + 1] - offsets[record]);
+      emitLineFeed();
+    }
+    flushStaging();
+  }
+
+  private Path spillRun(final List<Path> temporaryFiles) throws IOException {
+    sortRecords();
+
+    Path run = Files.createTempFile(temporaryDirectory, "jbauta", ".run");
+    temporaryFiles.add(run);
+
+    try (FileChannel channel = FileChannel.open(run, StandardOpenOption.WRITE)) {
+      target = channel;
+      for (int i = 0; i < recordCount; i++) {
+        int record = order[i];
+        int length = offsets[record + 1] - offsets[record];
+        emitHeader(keyHigh[record], keyLow[record], length);
+        emitRecord(offsets[record], length);
+      }
+      flushStaging();
+    }
+
+    data.clear();
+    recordCount = 0;
+    return run;
+  }
+
+  /*
+   * Merges all runs into the output. If there are more runs than read buffers of a reasonable
+   * size fit into the off-heap buffer, or than files should be open at once, consecutive runs
+   * are merged into larger runs first.
+   */
+  private void merge(final List<Path> runs, final WritableByteChannel channel,
+      final List<Path> temporaryFiles) throws IOException {
+    int maximumFanIn = Math.max(2,
+        Math.min(MAXIMUM_FAN_IN, data.capacity() / MINIMUM_READ_BUFFER_SIZE));
+    List<Path> remaining = runs;
+
+    while (remaining.size() > maximumFanIn) {
+      List<Path> merged = new ArrayList<>();
+      for (int i = 0; i < remaining.size(); i += maximumFanIn) {
+        List<Path> group = remaining.subList(i, Math.min(i + maximumFanIn, remaining.size()));
+        if (group.size() == 1) {
+          merged.add(group.get(0));
+          continue;
+        }
+
+        Path run = Files.createTempFile(temporaryDirectory, "jbauta", ".run");
+        temporaryFiles.add(run);
+        try (FileChannel runChannel = FileChannel.open(run, StandardOpenOption.WRITE)) {
+          mergeRuns(group, runChannel, true);
+        }
+        for (Path file : group) {
+          Files.delete(file);
+        }
+        merged.add(run);
+      }
+      remaining = merged;
+    }
+
+    mergeRuns(remaining, channel, false);
+  }
+
+  private void mergeRuns(final List<Path> runs, final WritableByteChannel channel,
+      boolean isIntermediate) throws IOException {
+    int runCount = runs.size();
+    int bufferSize = data.capacity() / runCount;
+    RunReader[] readers = new RunReader[runCount];
+    int[] heap = new int[runCount];
+    int heapSize = 0;
+
+    try {
+      for (int i = 0; i < runCount; i++) {
+        data.clear();
+        data.position(i * bufferSize).limit((i + 1) * bufferSize);
+        readers[i] = new RunReader(FileChannel.open(runs.get(i), StandardOpenOption.READ),
+            data.slice());
+        if (readers[i].next()) {
+          heap[heapSize] = i;
+          siftUp(readers, heap, heapSize++);
+        }
+      }
+
+      target = channel;
+      while (heapSize > 0) {
+        RunReader reader = readers[heap[0]];
+        if (isIntermediate) {
+          emitHeader(reader.keyHigh, reader.keyLow, reader.length);
+        }
+        emitBody(reader);
+        if (!isIntermediate) {
+          emitLineFeed();
+        }
+
+        if (!reader.next()) {
+          heap[0] = heap[--heapSize];
+        }
+        siftDown(readers, heap, heapSize);
+      }
+      flushStaging();
+    } finally {
+      data.clear();
+      for (RunReader reader : readers) {
+        if (reader != null) {
+          reader.channel.close();
+        }
+      }
+    }
+  }
+
+  private static boolean isBefore(final RunReader[] readers, int first, int second) {
+    RunReader a = readers[first];
+    RunReader b = readers[second];
+    int result = compareKeys(a.keyHigh, a.keyLow, b.keyHigh, b.keyLow);
+
+    // earlier runs hold earlier lines, which keeps the merge stable
+    return result < 0 || (result == 0 && first < second);
+  }
+
+  private static void siftUp(final RunReader[] readers, final int[] heap, int index) {
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+      if (!isBefore(readers, heap[index], heap[parent])) {
+        break;
+      }
+      swap(heap, index, parent);
+      index = parent;
+    }
+  }
+
+  private static void siftDown(final RunReader[] readers, final int[] heap, int heapSize) {
+    int index = 0;
+    while (true) {
+      int smallest = index;
+      int left = 2 * index + 1;
+      int right = left + 1;
+      if (left < heapSize && isBefore(readers, heap[left], heap[smallest])) {
+        smallest = left;
+      }
+      if (right < heapSize && isBefore(readers, heap[right], heap[smallest])) {
+        smallest = right;
+      }
+      if (smallest == index) {
+        break;
+      }
+      swap(heap, index, smallest);
+      index = smallest;
+    }
+  }
+
+  private static void swap(final int[] values, int first, int second) {
+    int value = values[first];
+    values[first] = values[second];
+    values[second] = value;
+  }
+
+  private void emitHeader(long high, long low, int length) throws IOException {
+    if (staging.remaining() < RECORD_HEADER_SIZE) {
+      flushStaging();
+    }
+    staging.putLong(high).putLong(low).putInt(length);
+  }
+
+  private void emitRecord(int offset, int length) throws IOException {
+    int position = offset;
+    int end = offset + length;
+
+    while (position < end) {
+      if (!staging.hasRemaining()) {
+        flushStaging();
+      }
+      int count = Math.min(staging.remaining(), end - position);
+      dataView.limit(position + count).position(position);
+      staging.put(dataView);
+      position += count;
+    }
+  }
+
+  private void emitBody(final RunReader reader) throws IOException {
+    int remaining = reader.length;
+
+    while (remaining > 0) {
+      if (!reader.fill(1)) {
+        throw new IOException("Unexpected end of sorted run");
+      }
+      if (!staging.hasRemaining()) {
+        flushStaging();
+      }
+
+      ByteBuffer buffer = reader.buffer;
+      int count = Math.min(remaining, Math.min(buffer.remaining(), staging.remaining()));
+      int limit = buffer.limit();
+      buffer.limit(buffer.position() + count);
+      staging.put(buffer);
+      buffer.limit(limit);
+      remaining -= count;
+    }
+  }
+
+  private void emitLineFeed() throws IOException {
+    if (!staging.hasRemaining()) {
+      flushStaging();
+    }
+    staging.put((byte) '\n');
+  }
+
+  private void flushStaging() throws IOException {
+    staging.flip();
+    while (staging.hasRemaining()) {
+      target.write(staging);
+    }
+    staging.clear();
+  }
+
+  private static int readInt(final byte[] bytes, int offset) {
+    return ((bytes[offset] & 0xFF) << 24)
+        | ((bytes[offset + 1] & 0xFF) << 16)
+        | ((bytes[offset + 2] & 0xFF) << 8)
+        | (bytes[offset + 3] & 0xFF);
+  }
+
+  private static long readLong(final byte[] bytes, int offset) {
+    return ((long) readInt(bytes, offset) << 32) | (readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Stream writing masked lines into the off-heap record buffer, flagging lines which do not fit.
+   */
+  private class DataStream extends OutputStream {
+
+    private boolean hasOverflown;
+
+    @Override
+    public void write(int b) {
+      if (hasOverflown || !data.hasRemaining()) {
+        hasOverflown = true;
+      } else {
+        data.put((byte) b);
+      }
+    }
+
+    @Override
+    public void write(final byte[] bytes, int offset, int length) {
+      if (hasOverflown || data.remaining() < length) {
+        hasOverflown = true;
+      } else {
+        data.put(bytes, offset, length);
+      }
+    }
+  }
+
+  /**
+   * Sequential reader of a sorted run, holding the key of its current record.
+   */
+  private static class RunReader {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long keyHigh;
+    private long keyLow;
+    private int length;
+
+    private RunReader(final FileChannel channel, final ByteBuffer buffer) {
+      this.channel = channel;
+      this.buffer = buffer;
+      this.buffer.limit(0);
+    }
+
+    private boolean next() throws IOException {
+      if (!fill(RECORD_HEADER_SIZE)) {
+        return false;
+      }
+
+      keyHigh = buffer.getLong();
+      keyLow = buffer.getLong();
+      length = buffer.getInt();
+      return true;
+    }
+
+    private boolean fill(int minimum) throws IOException {
+      if (buffer.remaining() >= minimum) {
+        return true;
+      }
+
+      buffer.compact();
+      while (buffer.position() < minimum && channel.read(buffer) != -1) {
+        // read until the minimum is available or the run ends
+      }
+      buffer.flip();
+
+      if (buffer.remaining() == 0) {
+        return false;
+      } else if (buffer.remaining() < minimum) {
+        throw new IOException("Unexpected end of sorted run");
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Masquerading of all IP literals within free text, e.g. lines of a log file.
+ *
+ * IP literals are found by an {@link AddressScanner}, masked with a Bauta context and written
+ * back in their canonical form, i.e. dotted decimal for IP version 4 and the compressed lower case
+ * form of RFC 5952 for IP version 6. IP version 4 mapped IP version 6 addresses such as {@code
+ * ::ffff:192.0.2.1} are masked like IP version 4 addresses, the same way as {@link
+ * Bauta#maskAny(java.net.InetAddress)} does. Everything else is copied unchanged.
+ *
+ * <p>An instance is not thread-safe, since it reuses its internal buffers.</p>
+ */
+public class TextMasker {
+
+  private static final int MAX_LITERAL_LENGTH = 45;
+  private static final byte[] HEX_DIGITS =
+      "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] IPV4_MAPPED_PREFIX =
+      "::ffff:".getBytes(StandardCharsets.US_ASCII);
+
+  private final Bauta bauta;
+  private final AddressScanner scanner = new AddressScanner();
+  private final byte[] literal = new byte[MAX_LITERAL_LENGTH];
+  private final byte[] firstAddress = new byte[AddressUtil.IPV6_BYTE_COUNT];
+  private int firstAddressLength;
+  private final ByteMasker byteMasker = new ByteMasker();
+  private final CharMasker charMasker = new CharMasker();
+
+  /**
+   * Initialise a text masker masking all IP literals with the given Bauta context.
+   *
+   * <p>Precondition: bauta is not equals null</p>
+   *
+   * @param bauta Bauta context used for masking
+   */
+  public TextMasker(final Bauta bauta) {
+    this.bauta = Objects.requireNonNull(bauta);
+  }
+
+  /**
+   * Masquerade all IP literals within a text.
+   *
+   * @param text Text to mask
+   * @return Copy of {@code text} with all IP literals masked
+   */
+  public String mask(final CharSequence text) {
+    Objects.requireNonNull(text);
+
+    charMasker.text = text;
+    charMasker.output = new StringBuilder(text.length());
+    charMasker.copied = 0;
+    firstAddressLength = 0;
+    try {
+      scanner.scan(text, charMasker);
+      charMasker.output.append(text, charMasker.copied, text.length());
+      return charMasker.output.toString();
+    } finally {
+      charMasker.text = null;
+      charMasker.output = null;
+    }
+  }
+
+  /**
+   * Masquerade all IP literals within a text encoded in an ASCII compatible charset like UTF-8.
+   *
+   * @param text Array holding the text to mask
+   * @param offset Index of the first byte to mask
+   * @param length Amount of bytes to mask
+   * @param output Stream receiving the masked text
+   * @return Amount of IP literals masked
+   * @throws IOException If writing to {@code output} fails
+   */
+  public int mask(final byte[] text, int offset, int length, final OutputStream output)
+      throws IOException {
+    Objects.requireNonNull(output);
+
+    byteMasker.text = text;
+    byteMasker.output = output;
+    byteMasker.copied = offset;
+    firstAddressLength = 0;
+    try {
+      int count = scanner.scan(text, offset, length, byteMasker);
+      if (byteMasker.failure != null) {
+        throw byteMasker.failure;
+      }
+      output.write(text, byteMasker.copied, offset + length - byteMasker.copied);
+      return count;
+    } finally {
+      byteMasker.text = null;
+      byteMasker.output = null;
+      byteMasker.failure = null;
+    }
+  }
+
+  /**
+   * Get the masked address of the first IP literal within the text masked last.
+   *
+   * The returned array is reused and only valid until the next text is masked.
+   *
+   * @return Masked address in network byte order, starting at index 0
+   */
+  byte[] getFirstAddress() {
+    return firstAddress;
+  }
+
+  /**
+   * Get the length of the masked address returned by {@link #getFirstAddress()}.
+   *
+   * @return 4 or 16 depending on the IP version, or 0 if the text masked last held no IP literal
+   */
+  int getFirstAddressLength() {
+    return firstAddressLength;
+  }
+
+  /*
+   * Masks the address in place and writes its canonical form into the literal buffer.
+   */
+  private int maskAndFormat(final byte[] address, int length) {
+    if (length == AddressUtil.IPV4_BYTE_COUNT) {
+      bauta.maskAnyInPlace(address, 0, length);
+      rememberFirstAddress(address, length);
+      return formatIPv4(address, 0, 0);
+    }
+
+    if (isIPv4Mapped(address)) {
+      bauta.maskAnyInPlace(address, 12, AddressUtil.IPV4_BYTE_COUNT);
+      rememberFirstAddress(address, length);
+      System.arraycopy(IPV4_MAPPED_PREFIX, 0, literal, 0, IPV4_MAPPED_PREFIX.length);
+      return formatIPv4(address, 12, IPV4_MAPPED_PREFIX.length);
+    }
+
+    bauta.maskAnyInPlace(address, 0, length);
+    rememberFirstAddress(address, length);
+    return formatIPv6(address);
+  }
+
+  private void rememberFirstAddress(final byte[] address, int length) {
+    if (firstAddressLength == 0) {
+      System.arraycopy(address, 0, firstAddress, 0, length);
+      firstAddressLength = length;
+    }
+  }
+
+  private static boolean isIPv4Mapped(final byte[] address) {
+    for (int i = 0; i < 10; i++) {
+      if (address[i] != 0) {
+        return false;
+      }
+    }
+    return address[10] == (byte) 0xFF && address[11] == (byte) 0xFF;
+  }
+
+  private int formatIPv4(final byte[] address, int offset, int position) {
+    for (int i = 0; i < AddressUtil.IPV4_BYTE_COUNT; i++) {
+      if (i > 0) {
+        literal[position++] = '.';
+      }
+      int octet = address[offset + i] & 0xFF;
+      if (octet >= 100) {
+        literal[position++] = (byte) ('0' + octet / 100);
+      }
+      if (octet >= 10) {
+        literal[position++] = (byte) ('0' + octet / 10 % 10);
+      }
+      literal[position++] = (byte) ('0' + octet % 10);
+    }
+    return position;
+  }
+
+  /*
+   * Formats according to RFC 5952: the longest run of at least two zero groups, the first one if
+   * there are several, is replaced by a double colon.
+   */
+  private int formatIPv6(final byte[] address) {
+    int gapStart = -1;
+    int gapLength = 1;
+    for (int i = 0; i < 8; ) {
+      int runLength = 0;
+      while (i + runLength < 8 && getGroup(address, i + runLength) == 0) {
+        runLength++;
+      }
+      if (runLength > gapLength) {
+        gapStart = i;
+        gapLength = runLength;
+      }
+      i += runLength + 1;
+    }
+
+    int position = 0;
+    for (int i = 0; i < 8; i++) {
+      if (i == gapStart) {
+        literal[position++] = ':';
+        literal[position++] = ':';
+        i += gapLength - 1;
+        continue;
+      }
+      if (i > 0 && i != gapStart + gapLength) {
+        literal[position++] = ':';
+      }
+
+      int group = getGroup(address, i);
+      boolean isLeadingZero = true;
+      for (int shift = 12; shift >= 0; shift -= 4) {
+        int digit = (group >>> shift) & 0xF;
+        if (digit != 0 || shift == 0 || !isLeadingZero) {
+          literal[position++] = HEX_DIGITS[digit];
+          isLeadingZero = false;
+        }
+      }
+    }
+    return position;
+  }
+
+  private static int getGroup(final byte[] address, int group) {
+    return ((address[2 * group] & 0xFF) << 8) | (address[2 * group + 1] & 0xFF);
+  }
+
+  private class ByteMasker implements AddressScanner.Listener {
+
+    private byte[] text;
+    private OutputStream output;
+    private int copied;
+    private IOException failure;
+
+    @Override
+    public void onAddress(int start, int end, byte[] address, int length) {
+      if (failure != null) {
+        return;
+      }
+
+      int literalLength = maskAndFormat(address, length);
+      try {
+        output.write(text, copied, start - copied);
+        output.write(literal, 0, literalLength);
+      } catch (IOException e) {
+        failure = e;
+      }
+      copied = end;
+    }
+  }
+
+  private class CharMasker implements AddressScanner.Listener {
+
+    private CharSequence text;
+    private StringBuilder output;
+    private int copied;
+
+    @Override
+    public void onAddress(int start, int end, byte[] address, int length) {
+      int literalLength = maskAndFormat(address, length);
+
+      output.append(text, copied, start);
+      for (int i = 0; i < literalLength; i++) {
+        output.append((char) literal[i]);
+      }
+      copied = end;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AddressScannerTest {
+
+  private final AddressScanner scanner = new AddressScanner();
+
+  private List<String> literals;
+  private List<byte[]> addresses;
+
+  private void scan(String text) {
+    literals = new ArrayList<>();
+    addresses = new ArrayList<>();
+    scanner.scan(text, (start, end, address, length) -> {
+      literals.add(text.substring(start, end));
+      addresses.add(Arrays.copyOf(address, length));
+    });
+  }
+
+  private void assertLiterals(String... expected) throws UnknownHostException {
+    assertEquals(Arrays.asList(expected), literals);
+    for (int i = 0; i < expected.length; i++) {
+      assertArrayEquals(InetAddress.getByName(expected[i]).getAddress(), addresses.get(i));
+    }
+  }
+
+  @Test
+  @DisplayName("Test IP version 4 literals")
+  void testIPv4Scan0() throws UnknownHostException {
+    scan("203.0.113.42 - - [10/Oct/2018:13:55:36 +0200] \"GET / HTTP/1.1\" from 192.0.2.1");
+    assertLiterals("203.0.113.42", "192.0.2.1");
+  }
+
+  @Test
+  @DisplayName("Test IP version 4 literals with ports and punctuation")
+  void testIPv4Scan1() throws UnknownHostException {
+    scan("connect to 192.0.2.1:443, peer=(198.51.100.7). Done at 10.0.0.1.");
+    assertLiterals("192.0.2.1", "198.51.100.7", "10.0.0.1");
+  }
+
+  @Test
+  @DisplayName("Test version numbers and timestamps")
+  void testFalsePositives0() throws UnknownHostException {
+    scan("version 1.2.3 v1.2.3.4 1.2.3.4.5 2018.10.19 12:30:45 12:30:45.123 256.1.1.1 1.2.3.4a");
+    assertLiterals();
+  }
+
+  @Test
+  @DisplayName("Test MAC addresses and double colons in source code")
+  void testFalsePositives1() throws UnknownHostException {
+    scan("mac 00:1a:2b:3c:4d:5e std::vector :: Foo::bar 1:2:3:4:5:6:7:8:9");
+    assertLiterals();
+  }
+
+  @Test
+  @DisplayName("Test hex letter identifiers around double colons")
+  void testFalsePositives2() throws UnknownHostException {
+    scan("a::b dead::beef Cafe:: Cafe::Babe ::add face::f00d a:b::c");
+    assertLiterals("face::f00d", "a:b::c");
+  }
+
+  @Test
+  @DisplayName("Test IP version 6 literals")
+  void testIPv6Scan0() throws UnknownHostException {
+    scan("from 2001:DB8::42 to 2001:db8:0:0:1:0:0:1 via ::1 and fe80:: done");
+    assertLiterals("2001:DB8::42", "2001:db8:0:0:1:0:0:1", "::1", "fe80::");
+  }
+
+  @Test
+  @DisplayName("Test IP version 6 literals in brackets and with zone ID")
+  void testIPv6Scan1() throws UnknownHostException {
+    scan("http://[2001:db8::1]:8080/ and fe80::1%eth0 said hello");
+    assertLiterals("2001:db8::1", "fe80::1");
+  }
+
+  @Test
+  @DisplayName("Test IP version 6 literals at the end of a sentence")
+  void testIPv6Scan3() throws UnknownHostException {
+    scan("Connection from 2001:db8:1234::1. Peer 2001:db8:1:2:3:4:5:6. from 2001:db8:1234::abcd."
+        + " Done at fe80::1. Not fe80::1.2 nor 1:2:3:4:5:6:1.2.3");
+    assertLiterals("2001:db8:1234::1", "2001:db8:1:2:3:4:5:6", "2001:db8:1234::abcd",
+        "fe80::1");
+  }
+
+  @Test
+  @DisplayName("Test IP version 6 literals with embedded IP version 4 address")
+  void testIPv6Scan2() throws UnknownHostException {
+    scan("mapped ::ffff:192.0.2.1 and 64:ff9b::198.51.100.7 and 1:2:3:4:5:6:1.2.3.4");
+    assertEquals(Arrays.asList("::ffff:192.0.2.1", "64:ff9b::198.51.100.7",
+        "1:2:3:4:5:6:1.2.3.4"), literals);
+    assertEquals(16, addresses.get(0).length);
+    assertArrayEquals(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xFF, (byte) 0xFF,
+        (byte) 192, 0, 2, 1}, addresses.get(0));
+    assertArrayEquals(InetAddress.getByName("64:ff9b::198.51.100.7").getAddress(),
+        addresses.get(1));
+  }
+
+  @Test
+  @DisplayName("Test scanning a byte array")
+  void testByteScan0() {
+    byte[] text = "xx 203.0.113.42 2001:db8::1 yy".getBytes(StandardCharsets.UTF_8);
+    List<Integer> offsets = new ArrayList<>();
+
+    int count = scanner.scan(text, 2, text.length - 2, (start, end, address, length) -> {
+      offsets.add(start);
+      offsets.add(end);
+    });
+
+    assertEquals(2, count);
+    assertEquals(Arrays.asList(3, 15, 16, 27), offsets);
+  }
+}
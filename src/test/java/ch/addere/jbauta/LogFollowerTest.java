@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class LogFollowerTest {
+
+  private static Bauta bauta;
+
+  private Path directory;
+  private Path input;
+  private Path output;
+  private Path checkpoint;
+
+  @BeforeAll
+  static void beforeAll() {
+    bauta = new BautaFactory().createDefaultIPMask();
+  }
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    directory = Files.createTempDirectory("jbauta");
+    input = directory.resolve("access.log");
+    output = directory.resolve("access.masked.log");
+    checkpoint = directory.resolve("access.checkpoint");
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  private void append(Path file, String text) throws IOException {
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+  }
+
+  private String readOutput() throws IOException {
+    return new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  @DisplayName("Test following appended lines")
+  void testFollow0() throws IOException {
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      assertEquals(0, follower.poll());
+
+      append(input, "203.0.113.42 GET /\n");
+      assertEquals(19, follower.poll());
+      assertEquals(0, follower.poll());
+
+      append(input, "192.0.2.42 GET /index.html\n2001:db8::42 GET /\n");
+      follower.poll();
+    }
+
+    assertEquals("203.0.112.0 GET /\n192.0.0.0 GET /index.html\n2001:db8:: GET /\n",
+        readOutput());
+  }
+
+  @Test
+  @DisplayName("Test partial lines are processed once completed")
+  void testFollow1() throws IOException {
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      append(input, "203.0.113");
+      assertEquals(0, follower.poll());
+
+      append(input, ".42 GET /\n");
+      assertEquals(19, follower.poll());
+    }
+
+    assertEquals("203.0.112.0 GET /\n", readOutput());
+  }
+
+  @Test
+  @DisplayName("Test lines longer than the read buffer")
+  void testFollow2() throws IOException {
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint, 16)) {
+      append(input, "a long line without any address\n203.0.113.42\n");
+      follower.poll();
+    }
+
+    assertEquals("a long line without any address\n203.0.112.0\n", readOutput());
+  }
+
+  @Test
+  @DisplayName("Test IP literal crossing the end of the read buffer")
+  void testFollow3() throws IOException {
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint, 16)) {
+      append(input, "a long line 203.0.113.42 GET /\n");
+      follower.poll();
+    }
+
+    assertEquals("a long line 203.0.112.0 GET /\n", readOutput());
+  }
+
+  @Test
+  @DisplayName("Test IP literal crossing the end of the default read buffer")
+  void testFollow4() throws IOException {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < 64 * 1024 - 5; i++) {
+      line.append('x');
+    }
+
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      append(input, line + " 203.0.113.42 GET /\n");
+      follower.poll();
+    }
+
+    assertEquals(line + " 203.0.112.0 GET /\n", readOutput());
+  }
+
+  @Test
+  @DisplayName("Test resuming from a checkpoint")
+  void testCheckpoint0() throws IOException {
+    append(input, "203.0.113.42 first\n");
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      follower.poll();
+    }
+
+    append(input, "203.0.113.43 second\n");
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      follower.poll();
+    }
+
+    assertEquals("203.0.112.0 first\n203.0.112.0 second\n", readOutput());
+  }
+
+  @Test
+  @DisplayName("Test output written after the last checkpoint is produced again")
+  void testCheckpoint1() throws IOException {
+    append(input, "203.0.113.42 first\n");
+    Path lastCheckpoint = directory.resolve("last.checkpoint");
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      follower.poll();
+      follower.checkpoint();
+      Files.copy(checkpoint, lastCheckpoint);
+
+      append(input, "203.0.113.43 second\n");
+      follower.poll();
+    }
+
+    // simulate a crash after writing the output but before writing the checkpoint
+    Files.move(lastCheckpoint, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      follower.poll();
+    }
+
+    assertEquals("203.0.112.0 first\n203.0.112.0 second\n", readOutput());
+  }
+
+  @Test
+  @DisplayName("Test rotation while following")
+  void testRotation0() throws IOException {
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      append(input, "203.0.113.42 first\n");
+      follower.poll();
+
+      append(input, "203.0.113.43 second\n203.0.113.44 unterminated");
+      Files.move(input, directory.resolve("access.log.1"));
+      append(input, "203.0.113.45 third\n");
+      follower.poll();
+    }
+
+    assertEquals("203.0.112.0 first\n203.0.112.0 second\n203.0.112.0 unterminated\n"
+        + "203.0.112.0 third\n", readOutput());
+  }
+
+  @Test
+  @DisplayName("Test rotation while not following")
+  void testRotation1() throws IOException {
+    append(input, "203.0.113.42 first\n");
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      follower.poll();
+    }
+
+    append(input, "203.0.113.43 second\n");
+    Files.move(input, directory.resolve("access.log.1"));
+    append(input, "203.0.113.44 third\n");
+
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      follower.poll();
+    }
+
+    assertEquals("203.0.112.0 first\n203.0.112.0 second\n203.0.112.0 third\n", readOutput());
+  }
+
+  @Test
+  @DisplayName("Test truncation while following")
+  void testTruncation0() throws IOException {
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      append(input, "203.0.113.42 first line\n");
+      follower.poll();
+
+      Files.write(input, "192.0.2.1 new\n".getBytes(StandardCharsets.UTF_8));
+      follower.poll();
+    }
+
+    assertEquals("203.0.112.0 first line\n192.0.0.0 new\n", readOutput());
+  }
+
+  @Test
+  @DisplayName("Test following until interrupted clears the interrupt flag")
+  void testInterrupt0() throws IOException {
+    try (LogFollower follower = new LogFollower(bauta, input, output, checkpoint)) {
+      append(input, "203.0.113.42 GET /\n");
+      Thread.currentThread().interrupt();
+      Executable follow = () -> follower.follow(1, 1, TimeUnit.MILLISECONDS);
+
+      assertThrows(InterruptedException.class, follow);
+      assertFalse(Thread.interrupted());
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class NetworkRangeIndexTest {
+
+  private Path csv;
+  private Path binary;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    csv = Files.createTempFile("jbauta", ".csv");
+    binary = Files.createTempFile("jbauta", ".bin");
+    Files.write(csv, Arrays.asList(
+        "# start,end,label",
+        "203.0.112.0,203.0.113.255,Zurich",
+        "192.0.2.0,192.0.2.255,Bern",
+        "",
+        "255.255.255.0,255.255.255.255,Broadcast",
+        "2001:db8::,2001:db8:ffff:ffff:ffff:ffff:ffff:ffff,Geneva",
+        "2001:db9::,2001:db9::ffff,Bern"), StandardCharsets.UTF_8);
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    Files.deleteIfExists(csv);
+    Files.deleteIfExists(binary);
+  }
+
+  @Test
+  @DisplayName("Test IP version 4 lookup from CSV")
+  void testIPv4Lookup0() throws IOException {
+    NetworkRangeIndex index = NetworkRangeIndex.fromCsv(csv);
+    assertEquals(5, index.size());
+    assertEquals("Zurich", index.lookup(InetAddress.getByName("203.0.112.0")));
+    assertEquals("Zurich", index.lookup(InetAddress.getByName("203.0.113.255")));
+    assertEquals("Bern", index.lookup(InetAddress.getByName("192.0.2.42")));
+    assertEquals("Broadcast", index.lookup(InetAddress.getByName("255.255.255.255")));
+  }
+
+  @Test
+  @DisplayName("Test IP version 4 lookup outside of any range")
+  void testIPv4Lookup1() throws IOException {
+    NetworkRangeIndex index = NetworkRangeIndex.fromCsv(csv);
+    assertNull(index.lookup(InetAddress.getByName("0.0.0.0")));
+    assertNull(index.lookup(InetAddress.getByName("192.0.3.0")));
+    assertNull(index.lookup(InetAddress.getByName("203.0.114.0")));
+  }
+
+  @Test
+  @DisplayName("Test IP version 6 lookup from CSV")
+  void testIPv6Lookup0() throws IOException {
+    NetworkRangeIndex index = NetworkRangeIndex.fromCsv(csv);
+    assertEquals("Geneva", index.lookup(InetAddress.getByName("2001:db8::42")));
+    assertEquals("Bern", index.lookup(InetAddress.getByName("2001:db9::ff")));
+    assertNull(index.lookup(InetAddress.getByName("2001:db9::1:0")));
+    assertNull(index.lookup(InetAddress.getByName("::1")));
+  }
+
+  @Test
+  @DisplayName("Test lookup of masked addresses")
+  void testMaskedLookup0() throws IOException {
+    NetworkRangeIndex index = NetworkRangeIndex.fromCsv(csv);
+    Bauta bta = new BautaFactory().createDefaultIPMask();
+
+    byte[] address = InetAddress.getByName("203.0.113.42").getAddress();
+    bta.maskAnyInPlace(address, 0, address.length);
+    assertEquals("Zurich", index.lookup(address, 0, address.length));
+    assertEquals("Zurich", index.lookupIPv4(bta.maskAny(0xCB00712A)));
+  }
+
+  @Test
+  @DisplayName("Test lookup of IP version 4 mapped addresses")
+  void testMappedLookup0() throws IOException {
+    Files.write(csv, Arrays.asList("::ffff:192.0.2.0,::ffff:192.0.2.255,Mapped"),
+        StandardCharsets.UTF_8);
+    NetworkRangeIndex index = NetworkRangeIndex.fromCsv(csv);
+
+    byte[] address = new byte[16];
+    address[10] = (byte) 0xFF;
+    address[11] = (byte) 0xFF;
+    System.arraycopy(InetAddress.getByName("192.0.2.42").getAddress(), 0, address, 12, 4);
+    assertEquals("Mapped", index.lookup(InetAddress.getByName("::ffff:192.0.2.42")));
+    assertEquals("Mapped", index.lookup(address, 0, address.length));
+    assertEquals("Mapped", index.lookup(InetAddress.getByName("192.0.2.42")));
+  }
+
+  @Test
+  @DisplayName("Test lookup after binary round trip")
+  void testBinaryLookup0() throws IOException {
+    NetworkRangeIndex.fromCsv(csv).writeBinary(binary);
+    NetworkRangeIndex index = NetworkRangeIndex.fromBinary(binary);
+    assertEquals(5, index.size());
+    assertEquals("Zurich", index.lookup(InetAddress.getByName("203.0.113.42")));
+    assertEquals("Geneva", index.lookup(InetAddress.getByName("2001:db8::42")));
+    assertNull(index.lookup(InetAddress.getByName("192.0.3.0")));
+  }
+
+  @Test
+  @DisplayName("Test loading a file which is not a binary index")
+  void testBinaryLookup1() {
+    Executable invalidBinary = () -> NetworkRangeIndex.fromBinary(csv);
+
+    assertThrows(IOException.class, invalidBinary);
+  }
+
+  @Test
+  @DisplayName("Test overlapping ranges")
+  void testInvalidCsv0() throws IOException {
+    Files.write(csv, Arrays.asList(
+        "192.0.2.0,192.0.2.255,Bern",
+        "192.0.2.128,192.0.3.255,Zurich"), StandardCharsets.UTF_8);
+    Executable overlapping = () -> NetworkRangeIndex.fromCsv(csv);
+
+    assertThrows(IllegalArgumentException.class, overlapping);
+  }
+
+  @Test
+  @DisplayName("Test host names instead of IP addresses")
+  void testInvalidCsv1() throws IOException {
+    Files.write(csv, Arrays.asList("localhost,192.0.2.255,Bern"), StandardCharsets.UTF_8);
+    Executable hostName = () -> NetworkRangeIndex.fromCsv(csv);
+
+    assertThrows(IllegalArgumentException.class, hostName);
+  }
+
+  @Test
+  @DisplayName("Test mixed IP versions in one range")
+  void testInvalidCsv2() throws IOException {
+    Files.write(csv, Arrays.asList("192.0.2.0,2001:db8::,Bern"), StandardCharsets.UTF_8);
+    Executable mixedVersions = () -> NetworkRangeIndex.fromCsv(csv);
+
+    assertThrows(IllegalArgumentException.class, mixedVersions);
+  }
+
+  @Test
+  @DisplayName("Test IP version 4 shorthand instead of four dotted octets")
+  void testInvalidCsv3() throws IOException {
+    for (String start : new String[]{"192.0.2", "10", "192.0.2.0.1", "192.0..2", "192.0.2.256"}) {
+      Files.write(csv, Arrays.asList(start + ",192.0.2.255,Bern"), StandardCharsets.UTF_8);
+      Executable shorthand = () -> NetworkRangeIndex.fromCsv(csv);
+
+      assertThrows(IllegalArgumentException.class, shorthand);
+    }
+  }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class PcapAnonymiserTest {
+
+  private static final int ETHERNET_HEADER_SIZE = 14;
+  private static final int PROTOCOL_ICMP = 1;
+  private static final int PROTOCOL_TCP = 6;
+  private static final int PROTOCOL_UDP = 17;
+  private static final int PROTOCOL_ICMPV6 = 58;
+
+  private static Bauta bauta;
+
+  private Path capture;
+
+  @BeforeAll
+  static void beforeAll() {
+    bauta = new BautaFactory().createDefaultIPMask();
+  }
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    capture = Files.createTempFile("jbauta", ".pcap");
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    Files.deleteIfExists(capture);
+  }
+
+  @Test
+  @DisplayName("Test IP version 4 UDP packet in little endian pcap file")
+  void testPcapIPv4Udp0() throws IOException {
+    byte[] packet = ipv4Packet("203.0.113.42", "192.0.2.42", PROTOCOL_UDP, udpSegment());
+    Files.write(capture, pcap(ByteOrder.LITTLE_ENDIAN, packet));
+
+    assertEquals(1, new PcapAnonymiser(bauta).anonymise(capture));
+
+    ByteBuffer result = pcapPacket(Files.readAllBytes(capture), ByteOrder.LITTLE_ENDIAN);
+    assertAddress("203.0.112.0", result, ETHERNET_HEADER_SIZE + 12, 4);
+    assertAddress("192.0.0.0", result, ETHERNET_HEADER_SIZE + 16, 4);
+    assertEquals(0xFFFF, sum(result, ETHERNET_HEADER_SIZE, 20, 0));
+    assertEquals(0xFFFF, transportSum(result, false));
+  }
+
+  @Test
+  @DisplayName("Test IP version 6 TCP packet in big endian pcap file")
+  void testPcapIPv6Tcp0() throws IOException {
+    byte[] packet = ipv6Packet("2001:db8:1:2::42", "2001:db8:3:4::43", PROTOCOL_TCP,
+        tcpSegment());
+    Files.write(capture, pcap(ByteOrder.BIG_ENDIAN, packet));
+
+    assertEquals(1, new PcapAnonymiser(bauta).anonymise(capture));
+
+    ByteBuffer result = pcapPacket(Files.readAllBytes(capture), ByteOrder.BIG_ENDIAN);
+    assertAddress("2001:db8::", result, ETHERNET_HEADER_SIZE + 8, 16);
+    assertAddress("2001:db8::", result, ETHERNET_HEADER_SIZE + 24, 16);
+    assertEquals(0xFFFF, transportSum(result, true));
+  }
+
+  @Test
+  @DisplayName("Test quoted datagram of an ICMP error message")
+  void testPcapIcmpError0() throws IOException {
+    byte[] quoted = ipv4Packet("192.0.2.42", "203.0.113.42", PROTOCOL_UDP, udpSegment());
+    byte[] quotedHeader = Arrays.copyOfRange(quoted, ETHERNET_HEADER_SIZE,
+        ETHERNET_HEADER_SIZE + 28);
+    ByteBuffer icmp = ByteBuffer.allocate(8 + quotedHeader.length);
+    icmp.put(0, (byte) 3).put(1, (byte) 3);
+    icmp.position(8);
+    icmp.put(quotedHeader);
+    icmp.putShort(2, (short) ~sum(icmp, 0, icmp.capacity(), 0));
+
+    byte[] packet = ipv4Packet("203.0.113.42", "192.0.2.42", PROTOCOL_ICMP, icmp.array());
+    Files.write(capture, pcap(ByteOrder.LITTLE_ENDIAN, packet));
+
+    new PcapAnonymiser(bauta).anonymise(capture);
+
+    ByteBuffer result = pcapPacket(Files.readAllBytes(capture), ByteOrder.LITTLE_ENDIAN);
+    int icmpOffset = ETHERNET_HEADER_SIZE + 20;
+    assertAddress("192.0.0.0", result, icmpOffset + 8 + 12, 4);
+    assertAddress("203.0.112.0", result, icmpOffset + 8 + 16, 4);
+    assertEquals(0xFFFF, sum(result, icmpOffset + 8, 20, 0));
+    assertEquals(0xFFFF, sum(result, icmpOffset, icmp.capacity(), 0));
+  }
+
+  @Test
+  @DisplayName("Test transport checksum of a datagram quoted in an ICMP error message")
+  void testPcapIcmpError1() throws IOException {
+    byte[] quoted = ipv4Packet("192.0.2.42", "203.0.113.42", PROTOCOL_UDP, udpSegment());
+    byte[] quotedDatagram = Arrays.copyOfRange(quoted, ETHERNET_HEADER_SIZE, quoted.length);
+    ByteBuffer icmp = ByteBuffer.allocate(8 + quotedDatagram.length);
+    icmp.put(0, (byte) 3).put(1, (byte) 3);
+    icmp.position(8);
+    icmp.put(quotedDatagram);
+    icmp.putShort(2, (short) ~sum(icmp, 0, icmp.capacity(), 0));
+
+    byte[] packet = ipv4Packet("203.0.113.42", "192.0.2.42", PROTOCOL_ICMP, icmp.array());
+    Files.write(capture, pcap(ByteOrder.LITTLE_ENDIAN, packet));
+
+    new PcapAnonymiser(bauta).anonymise(capture);
+
+    ByteBuffer result = pcapPacket(Files.readAllBytes(capture), ByteOrder.LITTLE_ENDIAN);
+    int icmpOffset = ETHERNET_HEADER_SIZE + 20;
+    ByteBuffer quotedResult = ByteBuffer.wrap(Arrays.copyOfRange(result.array(),
+        icmpOffset + 8 - ETHERNET_HEADER_SIZE, result.capacity()));
+    assertAddress("192.0.0.0", quotedResult, ETHERNET_HEADER_SIZE + 12, 4);
+    assertEquals(0xFFFF, transportSum(quotedResult, false));
+    assertEquals(0xFFFF, sum(result, icmpOffset, icmp.capacity(), 0));
+  }
+
+  @Test
+  @DisplayName("Test segment list of an IP version 6 segment routing header")
+  void testPcapIPv6Routing0() throws IOException {
+    byte[] segment = udpSegment();
+    ByteBuffer packet = ByteBuffer.allocate(ETHERNET_HEADER_SIZE + 40 + 40 + segment.length);
+    packet.putShort(12, (short) 0x86DD);
+    packet.position(ETHERNET_HEADER_SIZE);
+    packet.putInt(0x60000000).putShort((short) (40 + segment.length));
+    packet.put((byte) 43).put((byte) 64);
+    packet.put(address("2001:db8:1:2::42")).put(address("2001:db8:3:4::43"));
+    packet.put((byte) PROTOCOL_UDP).put((byte) 4).put((byte) 4).put((byte) 1);
+    packet.put((byte) 1).put((byte) 0).putShort((short) 0);
+    packet.put(address("2001:db8:5:6::99")).put(address("2001:db8:3:4::43"));
+    packet.put(segment);
+    int udpOffset = ETHERNET_HEADER_SIZE + 80;
+    packet.putShort(udpOffset + 6, (short) ~routedUdpSum(packet));
+    Files.write(capture, pcap(ByteOrder.BIG_ENDIAN, packet.array()));
+
+    new PcapAnonymiser(bauta).anonymise(capture);
+
+    ByteBuffer result = pcapPacket(Files.readAllBytes(capture), ByteOrder.BIG_ENDIAN);
+    assertAddress("2001:db8::", result, ETHERNET_HEADER_SIZE + 48, 16);
+    assertAddress("2001:db8::", result, ETHERNET_HEADER_SIZE + 64, 16);
+    assertEquals(0xFFFF, routedUdpSum(result));
+  }
+
+  @Test
+  @DisplayName("Test sender and target addresses of an ARP request")
+  void testPcapArp0() throws IOException {
+    ByteBuffer packet = ByteBuffer.allocate(ETHERNET_HEADER_SIZE + 28);
+    packet.putShort(12, (short) 0x0806);
+    packet.position(ETHERNET_HEADER_SIZE);
+    packet.putShort((short) 1).putShort((short) 0x0800).put((byte) 6).put((byte) 4)
+        .putShort((short) 1);
+    packet.put(new byte[6]).put(address("203.0.113.42"));
+    packet.put(new byte[6]).put(address("192.0.2.42"));
+    Files.write(capture, pcap(ByteOrder.LITTLE_ENDIAN, packet.array()));
+
+    new PcapAnonymiser(bauta).anonymise(capture);
+
+    ByteBuffer result = pcapPacket(Files.readAllBytes(capture), ByteOrder.LITTLE_ENDIAN);
+    assertAddress("203.0.112.0", result, ETHERNET_HEADER_SIZE + 14, 4);
+    assertAddress("192.0.0.0", result, ETHERNET_HEADER_SIZE + 24, 4);
+  }
+
+  @Test
+  @DisplayName("Test target address of an ICMPv6 neighbor solicitation")
+  void testPcapNeighborDiscovery0() throws IOException {
+    ByteBuffer solicitation = ByteBuffer.allocate(32);
+    solicitation.put((byte) 135).put((byte) 0).putShort((short) 0).putInt(0);
+    solicitation.put(address("2001:db8:3:4::43"));
+    solicitation.put((byte) 1).put((byte) 1).put(new byte[6]);
+    byte[] packet = ipv6Packet("2001:db8:1:2::42", "ff02::1:ff00:43", PROTOCOL_ICMPV6,
+        solicitation.array());
+    Files.write(capture, pcap(ByteOrder.BIG_ENDIAN, packet));
+
+    new PcapAnonymiser(bauta).anonymise(capture);
+
+    ByteBuffer result = pcapPacket(Files.readAllBytes(capture), ByteOrder.BIG_ENDIAN);
+    assertAddress("2001:db8::", result, ETHERNET_HEADER_SIZE + 40 + 8, 16);
+    assertEquals(0xFFFF, transportSum(result, true));
+  }
+
+  @Test
+  @DisplayName("Test enhanced packet block in pcapng file")
+  void testPcapng0() throws IOException {
+    byte[] packet = ipv4Packet("203.0.113.42", "192.0.2.42", PROTOCOL_TCP, tcpSegment());
+    Files.write(capture, pcapng(ByteOrder.LITTLE_ENDIAN, packet));
+
+    assertEquals(1, new PcapAnonymiser(bauta).anonymise(capture));
+
+    ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(capture));
+    ByteBuffer result = ByteBuffer.wrap(Arrays.copyOfRange(file.array(), 28 + 20 + 28,
+        28 + 20 + 28 + packet.length));
+    assertAddress("203.0.112.0", result, ETHERNET_HEADER_SIZE + 12, 4);
+    assertAddress("192.0.0.0", result, ETHERNET_HEADER_SIZE + 16, 4);
+    assertEquals(0xFFFF, sum(result, ETHERNET_HEADER_SIZE, 20, 0));
+    assertEquals(0xFFFF, transportSum(result, false));
+  }
+
+  @Test
+  @DisplayName("Test interface addresses and name resolution block in pcapng file")
+  void testPcapngMetadata0() throws IOException {
+    byte[] packet = ipv4Packet("203.0.113.42", "192.0.2.42", PROTOCOL_UDP, udpSegment());
+    byte[] ipv4Name = "host.example\0".getBytes("US-ASCII");
+    byte[] ipv6Name = "v6.example\0".getBytes("US-ASCII");
+    int packetBlockLength = 32 + packet.length + (4 - packet.length % 4) % 4;
+
+    ByteBuffer file = ByteBuffer.allocate(28 + 60 + 84 + packetBlockLength)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    file.putInt(0x0A0D0D0A).putInt(28).putInt(0x1A2B3C4D).putShort((short) 1)
+        .putShort((short) 0).putLong(-1).putInt(28);
+
+    file.putInt(1).putInt(60).putShort((short) 1).putShort((short) 0).putInt(65535);
+    file.putShort((short) 4).putShort((short) 8).put(address("203.0.113.42"))
+        .put(address("255.255.255.0"));
+    file.putShort((short) 5).putShort((short) 17).put(address("2001:db8:1:2::42"))
+        .put((byte) 64).put(new byte[3]);
+    file.putInt(0).putInt(60);
+
+    file.putInt(4).putInt(84);
+    file.putShort((short) 1).putShort((short) 17).put(address("203.0.113.42")).put(ipv4Name)
+        .put(new byte[3]);
+    file.putShort((short) 2).putShort((short) 27).put(address("2001:db8:1:2::42")).put(ipv6Name)
+        .put(new byte[1]);
+    file.putInt(0);
+    file.putShort((short) 3).putShort((short) 4).put(address("192.0.2.53"));
+    file.putInt(0).putInt(84);
+
+    file.putInt(6).putInt(packetBlockLength).putInt(0).putInt(0).putInt(0)
+        .putInt(packet.length).putInt(packet.length).put(packet);
+    file.putInt(file.capacity() - 4, packetBlockLength);
+    Files.write(capture, file.array());
+
+    assertEquals(1, new PcapAnonymiser(bauta).anonymise(capture));
+
+    ByteBuffer result = ByteBuffer.wrap(Files.readAllBytes(capture));
+    assertAddress("203.0.112.0", result, 28 + 20, 4);
+    assertAddress("255.255.255.0", result, 28 + 24, 4);
+    assertAddress("2001:db8::", result, 28 + 32, 16);
+    assertAddress("203.0.112.0", result, 88 + 12, 4);
+    assertArrayEquals(new byte[ipv4Name.length],
+        Arrays.copyOfRange(result.array(), 88 + 16, 88 + 16 + ipv4Name.length));
+    assertAddress("2001:db8::", result, 88 + 36, 16);
+    assertArrayEquals(new byte[ipv6Name.length],
+        Arrays.copyOfRange(result.array(), 88 + 52, 88 + 52 + ipv6Name.length));
+    assertAddress("192.0.0.0", result, 88 + 72, 4);
+    assertAddress("203.0.112.0", result, 172 + 28 + ETHERNET_HEADER_SIZE + 12, 4);
+  }
+
+  @Test
+  @DisplayName("Test truncated last packet")
+  void testPcapTruncated0() throws IOException {
+    byte[] packet = ipv4Packet("203.0.113.42", "192.0.2.42", PROTOCOL_UDP, udpSegment());
+    byte[] file = pcap(ByteOrder.LITTLE_ENDIAN, packet, packet);
+    Files.write(capture, Arrays.copyOf(file, file.length - 10));
+
+    assertEquals(1, new PcapAnonymiser(bauta).anonymise(capture));
+  }
+
+  @Test
+  @DisplayName("Test corrupt packet length in the middle of a pcap file")
+  void testPcapCorrupt0() throws IOException {
+    byte[] packet = ipv4Packet("203.0.113.42", "192.0.2.42", PROTOCOL_UDP, udpSegment());
+    ByteBuffer file = ByteBuffer.wrap(pcap(ByteOrder.LITTLE_ENDIAN, packet, packet, packet))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    file.putInt(24 + 16 + packet.length + 8, 0x7FFF0000);
+    Files.write(capture, file.array());
+    Executable corruptLength = () -> new PcapAnonymiser(bauta).anonymise(capture);
+
+    assertThrows(IOException.class, corruptLength);
+  }
+
+  @Test
+  @DisplayName("Test pcap file with a snapshot length of zero")
+  void testPcapSnapLength0() throws IOException {
+    byte[] packet = ipv4Packet("203.0.113.42", "192.0.2.42", PROTOCOL_UDP, udpSegment());
+    ByteBuffer file = ByteBuffer.wrap(pcap(ByteOrder.LITTLE_ENDIAN, packet, packet))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    file.putInt(16, 0);
+    Files.write(capture, file.array());
+
+    assertEquals(2, new PcapAnonymiser(bauta).anonymise(capture));
+  }
+
+  @Test
+  @DisplayName("Test packet length exceeding the original length")
+  void testPcapCorrupt1() throws IOException {
+    byte[] packet = ipv4Packet("203.0.113.42", "192.0.2.42", PROTOCOL_UDP, udpSegment());
+    ByteBuffer file = ByteBuffer.wrap(pcap(ByteOrder.BIG_ENDIAN, packet, packet));
+    file.putInt(24 + 12, packet.length - 1);
+    Files.write(capture, file.array());
+    Executable corruptLength = () -> new PcapAnonymiser(bauta).anonymise(capture);
+
+    assertThrows(IOException.class, corruptLength);
+  }
+
+  @Test
+  @DisplayName("Test file which is not a capture file")
+  void testInvalidCapture0() throws IOException {
+    Files.write(capture, "203.0.113.42 - - GET / HTTP/1.1".getBytes("US-ASCII"));
+    Executable invalidCapture = () -> new PcapAnonymiser(bauta).anonymise(capture);
+
+    assertThrows(IOException.class, invalidCapture);
+  }
+
+  private static void assertAddress(String expected, ByteBuffer buffer, int offset, int length)
+      throws IOException {
+    byte[] address = Arrays.copyOfRange(buffer.array(), offset, offset + length);
+    assertArrayEquals(InetAddress.getByName(expected).getAddress(), address);
+  }
+
+  private static byte[] address(String literal) throws IOException {
+    return InetAddress.getByName(literal).getAddress();
+  }
+
+  private static byte[] ipv4Packet(String source, String destination, int protocol,
+      byte[] segment) throws IOException {
+    ByteBuffer packet = ByteBuffer.allocate(ETHERNET_HEADER_SIZE + 20 + segment.length);
+    packet.putShort(12, (short) 0x0800);
+    packet.position(ETHERNET_HEADER_SIZE);
+    packet.put((byte) 0x45).put((byte) 0).putShort((short) (20 + segment.length));
+    packet.putInt(0).put((byte) 64).put((byte) protocol).putShort((short) 0);
+    packet.put(InetAddress.getByName(source).getAddress());
+    packet.put(InetAddress.getByName(destination).getAddress());
+    packet.put(segment);
+    packet.putShort(ETHERNET_HEADER_SIZE + 10,
+        (short) ~sum(packet, ETHERNET_HEADER_SIZE, 20, 0));
+    writeTransportChecksum(packet, false, protocol);
+    return packet.array();
+  }
+
+  private static byte[] ipv6Packet(String source, String destination, int protocol,
+      byte[] segment) throws IOException {
+    ByteBuffer packet = ByteBuffer.allocate(ETHERNET_HEADER_SIZE + 40 + segment.length);
+    packet.putShort(12, (short) 0x86DD);
+    packet.position(ETHERNET_HEADER_SIZE);
+    packet.putInt(0x60000000).putShort((short) segment.length);
+    packet.put((byte) protocol).put((byte) 64);
+    packet.put(InetAddress.getByName(source).getAddress());
+    packet.put(InetAddress.getByName(destination).getAddress());
+    packet.put(segment);
+    writeTransportChecksum(packet, true, protocol);
+    return packet.array();
+  }
+
+  private static byte[] udpSegment() {
+    ByteBuffer segment = ByteBuffer.allocate(13);
+    segment.putShort((short) 5353).putShort((short) 53).putShort((short) 13).putShort((short) 0);
+    segment.put(new byte[]{'b', 'a', 'u', 't', 'a'});
+    return segment.array();
+  }
+
+  private static byte[] tcpSegment() {
+    ByteBuffer segment = ByteBuffer.allocate(25);
+    segment.putShort((short) 50000).putShort((short) 443).putInt(42).putInt(0);
+    segment.put((byte) 0x50).put((byte) 0x02).putShort((short) 1024).putInt(0);
+    segment.put(new byte[]{'b', 'a', 'u', 't', 'a'});
+    return segment.array();
+  }
+
+  private static void writeTransportChecksum(ByteBuffer packet, boolean isIPv6, int protocol) {
+    if (protocol == PROTOCOL_ICMP) {
+      return;
+    }
+    int checksumOffset = transportOffset(isIPv6)
+        + (protocol == PROTOCOL_TCP ? 16 : protocol == PROTOCOL_ICMPV6 ? 2 : 6);
+    packet.putShort(checksumOffset, (short) ~transportSum(packet, isIPv6));
+  }
+
+  private static int transportOffset(boolean isIPv6) {
+    return ETHERNET_HEADER_SIZE + (isIPv6 ? 40 : 20);
+  }
+
+  private static int transportSum(ByteBuffer packet, boolean isIPv6) {
+    int offset = transportOffset(isIPv6);
+    int length = packet.capacity() - offset;
+    int protocol = packet.get(ETHERNET_HEADER_SIZE + (isIPv6 ? 6 : 9)) & 0xFF;
+    int addresses = isIPv6 ? sum(packet, ETHERNET_HEADER_SIZE + 8, 32, 0)
+        : sum(packet, ETHERNET_HEADER_SIZE + 12, 8, 0);
+
+    return sum(packet, offset, length, addresses + protocol + length);
+  }
+
+  /*
+   * Sums up the UDP datagram behind a segment routing header with two segments, whose pseudo
+   * header holds the final destination, i.e. the first segment.
+   */
+  private static int routedUdpSum(ByteBuffer packet) {
+    int offset = ETHERNET_HEADER_SIZE + 80;
+    int length = packet.capacity() - offset;
+    int addresses = sum(packet, ETHERNET_HEADER_SIZE + 8, 16, 0)
+        + sum(packet, ETHERNET_HEADER_SIZE + 48, 16, 0);
+
+    return sum(packet, offset, length, addresses + PROTOCOL_UDP + length);
+  }
+
+  private static int sum(ByteBuffer buffer, int offset, int length, int initial) {
+    long sum = initial;
+    for (int i = 0; i < length; i += 2) {
+      int high = buffer.get(offset + i) & 0xFF;
+      int low = i + 1 < length ? buffer.get(offset + i + 1) & 0xFF : 0;
+      sum += (high << 8) | low;
+    }
+    while ((sum >>> 16) != 0) {
+      sum = (sum & 0xFFFF) + (sum >>> 16);
+    }
+    return (int) sum;
+  }
+
+  private static byte[] pcap(ByteOrder order, byte[]... packets) {
+    int size = 24;
+    for (byte[] packet : packets) {
+      size += 16 + packet.length;
+    }
+
+    ByteBuffer file = ByteBuffer.allocate(size).order(order);
+    file.putInt(0xA1B2C3D4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0);
+    file.putInt(65535).putInt(1);
+    for (byte[] packet : packets) {
+      file.putInt(0).putInt(0).putInt(packet.length).putInt(packet.length).put(packet);
+    }
+    return file.array();
+  }
+
+  private static ByteBuffer pcapPacket(byte[] file, ByteOrder order) {
+    int length = ByteBuffer.wrap(file).order(order).getInt(24 + 8);
+    return ByteBuffer.wrap(Arrays.copyOfRange(file, 24 + 16, 24 + 16 + length));
+  }
+
+  private static byte[] pcapng(ByteOrder order, byte[] packet) {
+    int padding = (4 - packet.length % 4) % 4;
+    int packetBlockLength = 32 + packet.length + padding;
+
+    ByteBuffer file = ByteBuffer.allocate(28 + 20 + packetBlockLength).order(order);
+    file.putInt(0x0A0D0D0A).putInt(28).putInt(0x1A2B3C4D).putShort((short) 1)
+        .putShort((short) 0).putLong(-1).putInt(28);
+    file.putInt(1).putInt(20).putShort((short) 1).putShort((short) 0).putInt(65535).putInt(20);
+    file.putInt(6).putInt(packetBlockLength).putInt(0).putInt(0).putInt(0)
+        .putInt(packet.length).putInt(packet.length).put(packet).put(new byte[padding])
+        .putInt(packetBlockLength);
+    return file.array();
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class PrefixSorterTest {
+
+  private static final int MEMORY_LIMIT = 64 * 1024;
+
+  private static Bauta bauta;
+
+  private Path directory;
+
+  @BeforeAll
+  static void beforeAll() {
+    bauta = new BautaFactory().createDefaultIPMask();
+  }
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    directory = Files.createTempDirectory("jbauta");
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    Files.delete(directory);
+  }
+
+  private String sort(PrefixSorter sorter, String input) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    sorter.sort(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output);
+    return new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /*
+   * Reference implementation sorting the masked lines in memory, keyed by the masked address of
+   * their first literal. Addresses are masked separately, since a masked literal like abc:def::
+   * is not necessarily found again when scanning the masked line.
+   */
+  private String sortInMemory(List<String> lines) throws IOException {
+    TextMasker masker = new TextMasker(bauta);
+    AddressScanner scanner = new AddressScanner();
+    List<String[]> keyed = new ArrayList<>();
+
+    for (String line : lines) {
+      String[] key = {"~", masker.mask(line)};
+      scanner.scan(line, (start, end, address, length) -> {
+        if (key[0].equals("~")) {
+          bauta.maskAnyInPlace(address, 0, length);
+          key[0] = String.format("%32s", new java.math.BigInteger(1,
+              toMappedAddress(address, length)).toString(16)).replace(' ', '0');
+        }
+      });
+      keyed.add(key);
+    }
+
+    StringBuilder expected = new StringBuilder();
+    keyed.stream().sorted((a, b) -> a[0].compareTo(b[0]))
+        .forEach(key -> expected.append(key[1]).append('\n'));
+    return expected.toString();
+  }
+
+  private static byte[] toMappedAddress(byte[] address, int length) {
+    byte[] mapped = new byte[16];
+    if (length == 4) {
+      mapped[10] = (byte) 0xFF;
+      mapped[11] = (byte) 0xFF;
+      System.arraycopy(address, 0, mapped, 12, 4);
+    } else {
+      System.arraycopy(address, 0, mapped, 0, 16);
+    }
+    return mapped;
+  }
+
+  private List<String> randomLines(int count) throws IOException {
+    Random random = new Random(42);
+    List<String> lines = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+      byte[] address = new byte[random.nextInt(4) == 0 ? 16 : 4];
+      random.nextBytes(address);
+      address[0] = (byte) (address[0] & 0x0F);
+      String literal = InetAddress.getByAddress(address).getHostAddress();
+      lines.add(random.nextInt(50) == 0 ? "no address in line " + i
+          : literal + " - - request " + i);
+    }
+
+    return lines;
+  }
+
+  private long countRunFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  @Test
+  @DisplayName("Test sorting in memory")
+  void testSort0() throws IOException {
+    PrefixSorter sorter = new PrefixSorter(bauta, MEMORY_LIMIT, directory);
+    String result = sort(sorter, "203.0.113.42 first\n"
+        + "no address\n"
+        + "2001:db8::42 second\n"
+        + "192.0.2.42 third\n"
+        + "203.0.112.7 fourth\n"
+        + "::ffff:192.0.2.1 fifth");
+
+    assertEquals("192.0.0.0 third\n"
+        + "::ffff:192.0.0.0 fifth\n"
+        + "203.0.112.0 first\n"
+        + "203.0.112.0 fourth\n"
+        + "2001:db8:: second\n"
+        + "no address\n", result);
+  }
+
+  @Test
+  @DisplayName("Test external sorting with several runs")
+  void testSort1() throws IOException {
+    List<String> lines = randomLines(10000);
+    PrefixSorter sorter = new PrefixSorter(bauta, MEMORY_LIMIT, directory);
+
+    assertEquals(sortInMemory(lines), sort(sorter, String.join("\n", lines) + "\n"));
+    assertEquals(0, countRunFiles());
+  }
+
+  @Test
+  @DisplayName("Test external sorting with intermediate merges")
+  void testSort2() throws IOException {
+    List<String> lines = randomLines(60000);
+    PrefixSorter sorter = new PrefixSorter(bauta, MEMORY_LIMIT, directory);
+
+    assertEquals(sortInMemory(lines), sort(sorter, String.join("\n", lines) + "\n"));
+    assertEquals(0, countRunFiles());
+  }
+
+  @Test
+  @DisplayName("Test IP version 6 addresses below the IP version 4 mapped range")
+  void testSort3() throws IOException {
+    PrefixSorter sorter = new PrefixSorter(bauta, MEMORY_LIMIT, directory);
+    String result = sort(sorter, "192.0.2.42 first\n"
+        + "2001:db8::42 second\n"
+        + "::1 third\n");
+
+    assertEquals(":: third\n"
+        + "192.0.0.0 first\n"
+        + "2001:db8:: second\n", result);
+  }
+
+  @Test
+  @DisplayName("Test line exceeding the memory limit")
+  void testSortTooLongLine0() {
+    PrefixSorter sorter = new PrefixSorter(bauta, MEMORY_LIMIT, directory);
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < MEMORY_LIMIT; i++) {
+      line.append('x');
+    }
+    Executable tooLong = () -> sort(sorter, line.toString());
+
+    assertThrows(IOException.class, tooLong);
+  }
+
+  @Test
+  @DisplayName("Test too small memory limit")
+  void testSortMemoryLimit0() {
+    Executable tooSmall = () -> new PrefixSorter(bauta, 1024, directory);
+
+    assertThrows(IllegalArgumentException.class, tooSmall);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Pascal K. (ryru@addere.ch)
+ * Released under the terms of the 2-Clause BSD License.
+ */
+
+package ch.addere.jbauta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class TextMaskerTest {
+
+  private static BautaFactory factory;
+
+  @BeforeAll
+  static void beforeAll() {
+    factory = new BautaFactory();
+  }
+
+  @Test
+  @DisplayName("Test default masking of a log line")
+  void testDefaultMasking0() {
+    TextMasker masker = new TextMasker(factory.createDefaultIPMask());
+    String result = masker.mask("203.0.113.42 - - \"GET / HTTP/1.1\" 200 via [2001:DB8::42]:443");
+    assertEquals("203.0.112.0 - - \"GET / HTTP/1.1\" 200 via [2001:db8::]:443", result);
+  }
+
+  @Test
+  @DisplayName("Test masking of IP version 6 literals at the end of a sentence")
+  void testDefaultMasking2() {
+    TextMasker masker = new TextMasker(factory.createDefaultIPMask());
+    assertEquals("Connection from 2001:db8::. Peer 2001:db8::. from 2001:db8::. Done",
+        masker.mask("Connection from 2001:db8:1234::1. Peer 2001:db8:1:2:3:4:5:6. "
+            + "from 2001:db8:1234::abcd. Done"));
+  }
+
+  @Test
+  @DisplayName("Test text without IP literals")
+  void testDefaultMasking1() {
+    TextMasker masker = new TextMasker(factory.createDefaultIPMask());
+    String text = "release 1.2.3 started at 12:30:45 in dead::beef";
+    assertEquals(text, masker.mask(text));
+  }
+
+  @Test
+  @DisplayName("Test IP version 4 mapped IP version 6 masking")
+  void testMappedMasking0() {
+    TextMasker masker = new TextMasker(factory.createDefaultIPMask());
+    assertEquals("client ::ffff:192.0.0.0 zone fe80::%eth0",
+        masker.mask("client ::FFFF:192.0.2.42 zone fe80::1%eth0"));
+  }
+
+  @Test
+  @DisplayName("Test canonical IP version 6 output")
+  void testCustomMasking0() throws UnknownHostException {
+    InetAddress ipv4Mask = InetAddress.getByName("255.255.255.255");
+    InetAddress ipv6Mask = InetAddress.getByName("FFFF:0:FFFF:FFFF:0:0:FFFF:FFFF");
+    TextMasker masker = new TextMasker(factory.createCustomIPMask(ipv4Mask, ipv6Mask));
+    assertEquals("2001::1:0:0:1:0 192.0.2.42",
+        masker.mask("2001:db8:0:1:2:3:1:0 192.0.2.42"));
+  }
+
+  @Test
+  @DisplayName("Test masking a byte array")
+  void testByteMasking0() throws IOException {
+    TextMasker masker = new TextMasker(factory.createDefaultIPMask());
+    byte[] text = "skip 203.0.113.42 ok\n".getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    assertEquals(1, masker.mask(text, 5, text.length - 5, output));
+    assertEquals("203.0.112.0 ok\n", new String(output.toByteArray(), StandardCharsets.UTF_8));
+  }
+}